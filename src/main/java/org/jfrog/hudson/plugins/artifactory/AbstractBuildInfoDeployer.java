@@ -1,5 +1,6 @@
 package org.jfrog.hudson.plugins.artifactory;
 
+import com.google.common.collect.Maps;
 import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
@@ -13,17 +14,15 @@ import org.jfrog.build.api.BuildRetention;
 import org.jfrog.build.api.BuildType;
 import org.jfrog.build.api.LicenseControl;
 import org.jfrog.build.api.builder.BuildInfoBuilder;
-import org.jfrog.build.extractor.clientConfiguration.IncludeExcludePatterns;
-import org.jfrog.build.extractor.clientConfiguration.PatternMatcher;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.hudson.plugins.artifactory.action.ActionableHelper;
 import org.jfrog.hudson.plugins.artifactory.util.BuildRetentionFactory;
 import org.jfrog.hudson.plugins.artifactory.util.ExtractorUtils;
+import org.jfrog.hudson.plugins.artifactory.util.IncludeExcludeMatcher;
 import org.jfrog.hudson.plugins.artifactory.util.IncludesExcludes;
 
 import java.io.IOException;
 import java.util.Calendar;
-import java.util.Enumeration;
 import java.util.Map;
 import java.util.Properties;
 
@@ -125,50 +124,26 @@ public class AbstractBuildInfoDeployer {
         if (configurator.isIncludeEnvVars()) {
             IncludesExcludes envVarsPatterns = configurator.getEnvVarsPatterns();
             if (envVarsPatterns != null) {
-                IncludeExcludePatterns patterns = new IncludeExcludePatterns(envVarsPatterns.getIncludePatterns(),
-                        envVarsPatterns.getExcludePatterns());
-                // First add all build related variables
-                addBuildVariables(builder, patterns);
-
-                // Then add env variables
-                addEnvVariables(builder, patterns);
+                IncludeExcludeMatcher matcher = envVarsPatterns.getMatcher();
+                // Build related variables first, env variables override them
+                Map<String, String> variables = Maps.newHashMap(build.getBuildVariables());
+                variables.putAll(env);
+                for (Map.Entry<String, String> entry : variables.entrySet()) {
+                    String varKey = entry.getKey();
+                    if (!matcher.isExcluded(varKey)) {
+                        builder.addProperty(BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX + varKey,
+                                entry.getValue());
+                    }
+                }
 
                 // And finally add system variables
-                addSystemVariables(builder, patterns);
-            }
-        }
-    }
-
-    private void addBuildVariables(BuildInfoBuilder builder, IncludeExcludePatterns patterns) {
-        Map<String, String> buildVariables = build.getBuildVariables();
-        for (Map.Entry<String, String> entry : buildVariables.entrySet()) {
-            String varKey = entry.getKey();
-            if (PatternMatcher.pathConflicts(varKey, patterns)) {
-                continue;
-            }
-            builder.addProperty(BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX + varKey, entry.getValue());
-        }
-    }
-
-    private void addEnvVariables(BuildInfoBuilder builder, IncludeExcludePatterns patterns) {
-        for (Map.Entry<String, String> entry : env.entrySet()) {
-            String varKey = entry.getKey();
-            if (PatternMatcher.pathConflicts(varKey, patterns)) {
-                continue;
-            }
-            builder.addProperty(BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX + varKey, entry.getValue());
-        }
-    }
-
-    private void addSystemVariables(BuildInfoBuilder builder, IncludeExcludePatterns patterns) {
-        Properties systemProperties = System.getProperties();
-        Enumeration<?> enumeration = systemProperties.propertyNames();
-        while (enumeration.hasMoreElements()) {
-            String propertyKey = (String) enumeration.nextElement();
-            if (PatternMatcher.pathConflicts(propertyKey, patterns)) {
-                continue;
+                Properties systemProperties = System.getProperties();
+                for (String propertyKey : systemProperties.stringPropertyNames()) {
+                    if (!matcher.isExcluded(propertyKey)) {
+                        builder.addProperty(propertyKey, systemProperties.getProperty(propertyKey));
+                    }
+                }
             }
-            builder.addProperty(propertyKey, systemProperties.getProperty(propertyKey));
         }
     }
-}
\ No newline at end of file
+}
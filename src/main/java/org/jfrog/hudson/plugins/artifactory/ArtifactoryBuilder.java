@@ -22,6 +22,8 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.FreeStyleProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
@@ -34,8 +36,10 @@ import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfo
 import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
 
@@ -130,6 +134,32 @@ public class ArtifactoryBuilder extends Builder {
             return FormValidation.ok("Found Artifactory " + version.toString());
         }
 
+        /**
+         * Drops the cached repository keys of the server with the given URL, or of all the servers if none is given,
+         * so the next configuration page shows the current repositories. Changes state, so only accepted by POST.
+         */
+        public FormValidation doInvalidateRepositoryKeys(StaplerRequest req, StaplerResponse rsp,
+                @QueryParameter final String url) throws IOException {
+            if (!"POST".equals(req.getMethod())) {
+                rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST is required");
+                return null;
+            }
+            Hudson hudson = Hudson.getInstance();
+            if (!hudson.hasPermission(Hudson.ADMINISTER)) {
+                hudson.checkPermission(Item.CONFIGURE);
+            }
+            int invalidated = 0;
+            if (artifactoryServers != null) {
+                for (ArtifactoryServer server : artifactoryServers) {
+                    if (StringUtils.isBlank(url) || StringUtils.removeEnd(url, "/").equals(server.getUrl())) {
+                        server.invalidateRepositoryKeys();
+                        invalidated++;
+                    }
+                }
+            }
+            return FormValidation.ok("Cleared the repositories of " + invalidated + " Artifactory servers");
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             // indicates that this builder can be used with all kinds of project types
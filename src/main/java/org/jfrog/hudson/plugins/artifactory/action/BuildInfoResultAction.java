@@ -28,12 +28,49 @@ import org.jfrog.hudson.plugins.artifactory.util.ExtractorUtils;
  */
 public class BuildInfoResultAction implements BuildBadgeAction {
 
+    /**
+     * Progress of a deployment done after the build completed
+     */
+    public enum DeploymentStatus {
+        QUEUED("Deployment queued"),
+        DEPLOYING("Deploying"),
+        DEPLOYED("Deployed"),
+        FAILED("Deployment failed, see the console output");
+
+        private final String displayName;
+
+        DeploymentStatus(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
     private final String url;
+    /**
+     * Null if the deployment was done by the build itself
+     */
+    private volatile DeploymentStatus deploymentStatus;
 
     public BuildInfoResultAction(String artifactoryRootUrl, AbstractBuild build) {
+        this(artifactoryRootUrl, build, null);
+    }
+
+    public BuildInfoResultAction(String artifactoryRootUrl, AbstractBuild build, DeploymentStatus deploymentStatus) {
         url = artifactoryRootUrl + "/webapp/builds/"
                 + Util.rawEncode(ExtractorUtils.sanitizeBuildName(build.getParent().getFullName())) + "/"
                 + build.getNumber();
+        this.deploymentStatus = deploymentStatus;
+    }
+
+    public DeploymentStatus getDeploymentStatus() {
+        return deploymentStatus;
+    }
+
+    public void setDeploymentStatus(DeploymentStatus deploymentStatus) {
+        this.deploymentStatus = deploymentStatus;
     }
 
     public String getIconFileName() {
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.config;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import hudson.util.DaemonThreadFactory;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of Artifactory clients, reused so their connections are kept alive between requests instead of opening new
+ * ones for each request. The clients are not thread safe, so each of them is lent to a single user at a time. Clients
+ * are pooled by server and credentials, the number of clients of each is capped, and idle clients are shut down once
+ * idle for too long by a timer of the JVM holding the pool, master or slave.
+ */
+public class ArtifactoryClientPool {
+
+    /**
+     * Maximum number of idle clients kept for each server and credentials
+     */
+    public static final int MAX_IDLE_CLIENTS =
+            Integer.getInteger(ArtifactoryClientPool.class.getName() + ".maxIdleClients", 8);
+
+    /**
+     * Maximum number of clients, idle or lent, of each server and credentials
+     */
+    public static final int MAX_CLIENTS =
+            Integer.getInteger(ArtifactoryClientPool.class.getName() + ".maxClients", 32);
+
+    /**
+     * Time in milliseconds after which an idle client is shut down
+     */
+    public static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(
+            Long.getLong(ArtifactoryClientPool.class.getName() + ".idleTimeoutSeconds", 60));
+
+    /**
+     * Time in milliseconds to wait for a client once the maximum number of clients is lent
+     */
+    public static final long ACQUIRE_TIMEOUT = TimeUnit.SECONDS.toMillis(
+            Long.getLong(ArtifactoryClientPool.class.getName() + ".acquireTimeoutSeconds", 300));
+
+    private static final ArtifactoryClientPool instance = new ArtifactoryClientPool();
+
+    private final Map<String, Clients> clientsByKey = Maps.newHashMap();
+    private final Map<ArtifactoryBuildInfoClient, String> lentClients =
+            new IdentityHashMap<ArtifactoryBuildInfoClient, String>();
+    private final ScheduledExecutorService evictor =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+    /**
+     * Scheduled only while there are idle clients
+     */
+    private ScheduledFuture<?> evictionTask;
+
+    public static ArtifactoryClientPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates the clients of the pool when none is idle
+     */
+    public interface ClientFactory {
+        ArtifactoryBuildInfoClient create();
+    }
+
+    /**
+     * Lends the most recently used idle client for the key, or a new client if none is idle. Once the maximum number
+     * of clients of the key is reached, waits for one of them to be released.
+     *
+     * @param key     Identifies the server and credentials of the client, must not hold secrets in clear
+     * @param factory Creates the client if none is idle
+     * @return A client which must be given back with {@link #release}
+     */
+    public ArtifactoryBuildInfoClient acquire(String key, ClientFactory factory) {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT;
+            while (true) {
+                Clients clients = getClients(key);
+                if (!clients.idle.isEmpty()) {
+                    ArtifactoryBuildInfoClient client = clients.idle.removeFirst().client;
+                    lentClients.put(client, key);
+                    return client;
+                }
+                if (clients.count < MAX_CLIENTS) {
+                    // Reserved for the client created outside of the lock
+                    clients.count++;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Timed out waiting for one of the " + MAX_CLIENTS +
+                            " Artifactory clients in use to be released");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for an Artifactory client", e);
+                }
+            }
+        }
+
+        ArtifactoryBuildInfoClient client = null;
+        try {
+            client = factory.create();
+            return client;
+        } finally {
+            synchronized (this) {
+                if (client != null) {
+                    lentClients.put(client, key);
+                } else {
+                    removeClient(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a lent client to the pool. The client is shut down if it is not known to the pool, or if there are
+     * already enough idle clients for its key.
+     */
+    public void release(ArtifactoryBuildInfoClient client) {
+        boolean pooled = false;
+        synchronized (this) {
+            String key = lentClients.remove(client);
+            if (key != null) {
+                Clients clients = getClients(key);
+                if (clients.idle.size() < MAX_IDLE_CLIENTS) {
+                    clients.idle.addFirst(new IdleClient(client));
+                    pooled = true;
+                    scheduleEviction();
+                } else {
+                    removeClient(key);
+                }
+            }
+        }
+        if (!pooled) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Shuts down the clients which were idle for longer than the idle timeout
+     */
+    public void evictIdleClients() {
+        List<ArtifactoryBuildInfoClient> expired = Lists.newArrayList();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Clients> keys = clientsByKey.values().iterator();
+            while (keys.hasNext()) {
+                Clients clients = keys.next();
+                // Clients are ordered from the most to the least recently used
+                while (!clients.idle.isEmpty() && now - clients.idle.getLast().releaseTime > IDLE_TIMEOUT) {
+                    expired.add(clients.idle.removeLast().client);
+                    clients.count--;
+                }
+                if (clients.count == 0) {
+                    keys.remove();
+                }
+            }
+            if (!expired.isEmpty()) {
+                notifyAll();
+            }
+            if (clientsByKey.isEmpty() && evictionTask != null) {
+                evictionTask.cancel(false);
+                evictionTask = null;
+            }
+        }
+        for (ArtifactoryBuildInfoClient client : expired) {
+            client.shutdown();
+        }
+    }
+
+    private Clients getClients(String key) {
+        Clients clients = clientsByKey.get(key);
+        if (clients == null) {
+            clients = new Clients();
+            clientsByKey.put(key, clients);
+        }
+        return clients;
+    }
+
+    /**
+     * Forgets a client which is shut down, letting a waiting user create another one
+     */
+    private void removeClient(String key) {
+        Clients clients = getClients(key);
+        clients.count--;
+        if (clients.count == 0) {
+            clientsByKey.remove(key);
+        }
+        notifyAll();
+    }
+
+    private void scheduleEviction() {
+        if (evictionTask == null) {
+            long period = Math.max(IDLE_TIMEOUT / 2, 1000);
+            evictionTask = evictor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictIdleClients();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The clients of a key, the idle ones ordered from the most to the least recently used
+     */
+    private static class Clients {
+        private final LinkedList<IdleClient> idle = Lists.newLinkedList();
+        private int count;
+    }
+
+    private static class IdleClient {
+        private final ArtifactoryBuildInfoClient client;
+        private final long releaseTime;
+
+        private IdleClient(ArtifactoryBuildInfoClient client) {
+            this.client = client;
+            this.releaseTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jfrog.build.api.util.NullLog;
 import org.jfrog.build.client.*;
@@ -35,6 +36,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +51,23 @@ public class ArtifactoryServer implements Serializable {
 
     private static final int DEFAULT_CONNECTION_TIMEOUT = 300;    // 5 Minutes
 
+    /**
+     * Time in milliseconds after which the repositories lists are refreshed
+     */
+    private static final long REPOSITORIES_TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(
+            Long.getLong(ArtifactoryServer.class.getName() + ".repositoriesTimeToLiveSeconds", 300));
+
+    /**
+     * Time in milliseconds after which the server capabilities are probed again
+     */
+    private static final long CAPABILITIES_TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(
+            Long.getLong(ArtifactoryServer.class.getName() + ".capabilitiesTimeToLiveSeconds", 3600));
+
+    /**
+     * Random for each JVM, so pool keys can't be matched against hashes of known credentials
+     */
+    private static final String CLIENT_KEY_SALT = UUID.randomUUID().toString();
+
     private final String url;
     private final String id;
 
@@ -61,9 +81,11 @@ public class ArtifactoryServer implements Serializable {
     /**
      * List of repository keys, last time we checked. Copy on write semantics.
      */
-    private transient volatile List<String> repositories;
+    private transient RefreshingValue<List<String>> repositories;
 
-    private transient volatile List<VirtualRepository> virtualRepositories;
+    private transient RefreshingValue<List<VirtualRepository>> virtualRepositories;
+
+    private transient RefreshingValue<ServerCapabilities> capabilities;
 
     @DataBoundConstructor
     public ArtifactoryServer(String serverId, String url, Credentials deployerCredentials, Credentials resolverCredentials, int timeout,
@@ -100,12 +122,42 @@ public class ArtifactoryServer implements Serializable {
         return bypassProxy;
     }
 
+    /**
+     * The keys are cached, and refreshed in the background once expired
+     *
+     * @return A copy of the local repository keys, empty if they could not be obtained
+     */
     public List<String> getRepositoryKeys() {
+        List<String> repositoryKeys = getRepositories().get();
+        return repositoryKeys != null ? Lists.newArrayList(repositoryKeys) : Lists.<String>newArrayList();
+    }
+
+    /**
+     * Drops the cached repository keys, so they are fetched again on next use
+     */
+    public void invalidateRepositoryKeys() {
+        getRepositories().invalidate();
+        getVirtualRepositories().invalidate();
+    }
+
+    private synchronized RefreshingValue<List<String>> getRepositories() {
+        if (repositories == null) {
+            repositories = new RefreshingValue<List<String>>(REPOSITORIES_TIME_TO_LIVE) {
+                @Override
+                protected List<String> fetch() throws IOException {
+                    return fetchRepositoryKeys();
+                }
+            };
+        }
+        return repositories;
+    }
+
+    private List<String> fetchRepositoryKeys() throws IOException {
         Credentials resolvingCredentials = getResolvingCredentials();
-        ArtifactoryBuildInfoClient client = createArtifactoryClient(resolvingCredentials.getUsername(),
+        ArtifactoryBuildInfoClient client = acquireArtifactoryClient(resolvingCredentials.getUsername(),
                 resolvingCredentials.getPassword(), createProxyConfiguration(Hudson.getInstance().proxy));
         try {
-            repositories = client.getLocalRepositoriesKeys();
+            return Collections.unmodifiableList(client.getLocalRepositoriesKeys());
         } catch (IOException e) {
             if (log.isLoggable(Level.FINE)) {
                 log.log(Level.WARNING, "Could not obtain local repositories list from '" + url + "'", e);
@@ -113,11 +165,10 @@ public class ArtifactoryServer implements Serializable {
                 log.log(Level.WARNING,
                         "Could not obtain local repositories list from '" + url + "': " + e.getMessage());
             }
-            return Lists.newArrayList();
+            throw e;
         } finally {
-            client.shutdown();
+            releaseArtifactoryClient(client);
         }
-        return repositories;
     }
 
     public List<String> getReleaseRepositoryKeysFirst() {
@@ -149,17 +200,46 @@ public class ArtifactoryServer implements Serializable {
         }
     }
 
+    /**
+     * The keys are cached, and refreshed in the background once expired
+     *
+     * @return A copy of the virtual repositories, empty if they could not be obtained
+     */
     public List<VirtualRepository> getVirtualRepositoryKeys() {
+        List<VirtualRepository> cachedRepositories = getVirtualRepositories().get();
+        if (cachedRepositories == null) {
+            return Lists.newArrayList();
+        }
+        List<VirtualRepository> repositoryKeys = Lists.newArrayList(cachedRepositories);
+        repositoryKeys.add(0, new VirtualRepository(
+                "-- To use Artifactory for resolution select a virtual repository --", ""));
+        return repositoryKeys;
+    }
+
+    private synchronized RefreshingValue<List<VirtualRepository>> getVirtualRepositories() {
+        if (virtualRepositories == null) {
+            virtualRepositories = new RefreshingValue<List<VirtualRepository>>(REPOSITORIES_TIME_TO_LIVE) {
+                @Override
+                protected List<VirtualRepository> fetch() throws IOException {
+                    return fetchVirtualRepositories();
+                }
+            };
+        }
+        return virtualRepositories;
+    }
+
+    private List<VirtualRepository> fetchVirtualRepositories() throws IOException {
         Credentials resolvingCredentials = getResolvingCredentials();
-        ArtifactoryBuildInfoClient client = createArtifactoryClient(resolvingCredentials.getUsername(),
+        ArtifactoryBuildInfoClient client = acquireArtifactoryClient(resolvingCredentials.getUsername(),
                 resolvingCredentials.getPassword(), createProxyConfiguration(Hudson.getInstance().proxy));
         try {
             List<String> keys = client.getVirtualRepositoryKeys();
-            virtualRepositories = Lists.newArrayList(Lists.transform(keys, new Function<String, VirtualRepository>() {
-                public VirtualRepository apply(String from) {
-                    return new VirtualRepository(from, from);
-                }
-            }));
+            return Collections.unmodifiableList(Lists.newArrayList(
+                    Lists.transform(keys, new Function<String, VirtualRepository>() {
+                        public VirtualRepository apply(String from) {
+                            return new VirtualRepository(from, from);
+                        }
+                    })));
         } catch (IOException e) {
             if (log.isLoggable(Level.FINE)) {
                 log.log(Level.WARNING, "Could not obtain virtual repositories list from '" + url + "'", e);
@@ -167,23 +247,67 @@ public class ArtifactoryServer implements Serializable {
                 log.log(Level.WARNING,
                         "Could not obtain virtual repositories list from '" + url + "': " + e.getMessage());
             }
-            return Lists.newArrayList();
+            throw e;
         } finally {
-            client.shutdown();
+            releaseArtifactoryClient(client);
         }
-        virtualRepositories
-                .add(0, new VirtualRepository("-- To use Artifactory for resolution select a virtual repository --",
-                        ""));
-        return virtualRepositories;
     }
 
+    /**
+     * Never waits for the server, see {@link #getCachedCapabilities()}
+     *
+     * @return True if the server is known to have the Pro addons
+     */
     public boolean isArtifactoryPro() {
+        ServerCapabilities serverCapabilities = getCachedCapabilities();
+        return serverCapabilities != null && serverCapabilities.isPro();
+    }
+
+    /**
+     * The capabilities are probed lazily on the first call and refreshed in the background once expired, so only the
+     * first call may wait for the server. A failed probe is retried in the background after a short while.
+     *
+     * @return What the server supports, null if it could not be probed
+     */
+    public ServerCapabilities getCapabilities() {
+        return getCapabilitiesValue().get();
+    }
+
+    /**
+     * Same as {@link #getCapabilities()} without waiting for the server, for pages and other request threads. The
+     * first call starts probing the server in the background.
+     *
+     * @return What the server supports, null if it was not probed yet or could not be probed
+     */
+    public ServerCapabilities getCachedCapabilities() {
+        return getCapabilitiesValue().peek();
+    }
+
+    private synchronized RefreshingValue<ServerCapabilities> getCapabilitiesValue() {
+        if (capabilities == null) {
+            capabilities = new RefreshingValue<ServerCapabilities>(CAPABILITIES_TIME_TO_LIVE) {
+                @Override
+                protected ServerCapabilities fetch() throws IOException {
+                    return probeCapabilities();
+                }
+            };
+        }
+        return capabilities;
+    }
+
+    private ServerCapabilities probeCapabilities() throws IOException {
         Credentials resolvingCredentials = getResolvingCredentials();
+        ArtifactoryHttpClient client = new ArtifactoryHttpClient(url, resolvingCredentials.getUsername(),
+                resolvingCredentials.getPassword(), new NullLog());
+        client.setConnectionTimeout(timeout);
+        Hudson hudson = Hudson.getInstance();
+        ProxyConfiguration proxyConfiguration = hudson != null ? createProxyConfiguration(hudson.proxy) : null;
+        if (!bypassProxy && proxyConfiguration != null) {
+            client.setProxyConfiguration(proxyConfiguration.host, proxyConfiguration.port,
+                    proxyConfiguration.username, proxyConfiguration.password);
+        }
         try {
-            ArtifactoryHttpClient client = new ArtifactoryHttpClient(url, resolvingCredentials.getUsername(),
-                    resolvingCredentials.getPassword(), new NullLog());
-            ArtifactoryVersion version = client.getVersion();
-            return version.hasAddons();
+            return new ServerCapabilities(client.getVersion());
         } catch (IOException e) {
             if (log.isLoggable(Level.FINE)) {
                 log.log(Level.WARNING, "Could not obtain artifactory version from '" + url + "'", e);
@@ -191,8 +315,10 @@ public class ArtifactoryServer implements Serializable {
                 log.log(Level.WARNING,
                         "Could not obtain artifactory version from '" + url + "': " + e.getMessage());
             }
+            throw e;
+        } finally {
+            client.shutdown();
         }
-        return false;
     }
 
     /**
@@ -211,6 +337,51 @@ public class ArtifactoryServer implements Serializable {
         return client;
     }
 
+    /**
+     * Lends a client from the clients pool of this server and credentials, creating it if none is idle. The client
+     * must be given back with {@link #releaseArtifactoryClient} instead of being shut down.
+     * This method might run on slaves, in which case the client is pooled in the slave.
+     */
+    public ArtifactoryBuildInfoClient acquireArtifactoryClient(final String userName, final String password,
+                                                               final ProxyConfiguration proxyConfiguration) {
+        return ArtifactoryClientPool.getInstance().acquire(createClientKey(userName, password, proxyConfiguration),
+                new ArtifactoryClientPool.ClientFactory() {
+                    public ArtifactoryBuildInfoClient create() {
+                        return createArtifactoryClient(userName, password, proxyConfiguration);
+                    }
+                });
+    }
+
+    /**
+     * Gives back a client acquired with {@link #acquireArtifactoryClient}, keeping its connection alive for the next
+     * user of the same credentials
+     */
+    public void releaseArtifactoryClient(ArtifactoryBuildInfoClient client) {
+        ArtifactoryClientPool.getInstance().release(client);
+    }
+
+    /**
+     * The key identifies the server, credentials and proxy of a client by their salted hash, so the credentials are
+     * not kept in clear for as long as the client is pooled
+     */
+    private String createClientKey(String userName, String password, ProxyConfiguration proxyConfiguration) {
+        StringBuilder key = new StringBuilder(url).append('\n').append(timeout).append('\n').append(userName)
+                .append('\n').append(password);
+        if (!bypassProxy && proxyConfiguration != null) {
+            key.append('\n').append(proxyConfiguration.host).append('\n').append(proxyConfiguration.port)
+                    .append('\n').append(proxyConfiguration.username).append('\n')
+                    .append(proxyConfiguration.password);
+        }
+        return url + "#" + DigestUtils.shaHex(CLIENT_KEY_SALT + key);
+    }
+
+    /**
+     * @return The circuit breaker of this server, shared by all the users of the server in this JVM
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return CircuitBreaker.forServer(url);
+    }
+
     public ProxyConfiguration createProxyConfiguration(hudson.ProxyConfiguration proxy) {
         ProxyConfiguration proxyConfiguration = null;
         if (!(proxy == null || proxy.getName() == null)) {
@@ -266,7 +437,7 @@ public class ArtifactoryServer implements Serializable {
 
     private void gatherUserPluginInfo(List<UserPluginInfo> infosToReturn, String pluginKey) {
         Credentials resolvingCredentials = getResolvingCredentials();
-        ArtifactoryBuildInfoClient client = createArtifactoryClient(resolvingCredentials.getUsername(),
+        ArtifactoryBuildInfoClient client = acquireArtifactoryClient(resolvingCredentials.getUsername(),
                 resolvingCredentials.getPassword(), createProxyConfiguration(Hudson.getInstance().proxy));
         try {
             Map<String, List<Map>> userPluginInfo = client.getUserPluginInfo();
@@ -286,7 +457,7 @@ public class ArtifactoryServer implements Serializable {
         } catch (IOException e) {
             log.log(Level.WARNING, "Failed to obtain user plugin info: " + e.getMessage());
         } finally {
-            client.shutdown();
+            releaseArtifactoryClient(client);
         }
     }
 
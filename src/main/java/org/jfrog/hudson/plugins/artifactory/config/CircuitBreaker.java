@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.config;
+
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops requests to an Artifactory server which keeps failing, so builds fail fast instead of retrying against it.
+ * Once enough consecutive requests failed the circuit opens, and requests are rejected until the cool down period
+ * is over. The circuit is then half open: a single trial request is let through while the others are still rejected.
+ * The circuit closes if the trial succeeds, and opens again for another cool down period if it fails.
+ * Circuits are kept per server URL for the whole JVM.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Number of consecutive failures opening the circuit
+     */
+    public static final int FAILURES_THRESHOLD = 5;
+
+    /**
+     * Time in milliseconds during which requests are rejected once the circuit opened
+     */
+    public static final long COOL_DOWN = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Map<String, CircuitBreaker> breakers = Maps.newHashMap();
+
+    private final String url;
+    private int consecutiveFailures;
+    private long openUntil;
+    /**
+     * True while the trial request of the half open circuit is running
+     */
+    private boolean trialRunning;
+
+    private CircuitBreaker(String url) {
+        this.url = url;
+    }
+
+    public static CircuitBreaker forServer(String url) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(url);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(url);
+                breakers.put(url, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Must be called before each request, and followed by one of the record methods once the request is done
+     *
+     * @return True if the request is the trial request of the half open circuit, to be passed to the record method
+     * @throws OpenCircuitException If the circuit is open, or half open with its trial request already running
+     */
+    public synchronized boolean checkClosed() throws OpenCircuitException {
+        if (consecutiveFailures < FAILURES_THRESHOLD) {
+            return false;
+        }
+        long remaining = openUntil - System.currentTimeMillis();
+        if (remaining > 0) {
+            throw new OpenCircuitException("Artifactory at " + url + " failed " + consecutiveFailures +
+                    " consecutive requests, not sending requests to it for another " +
+                    TimeUnit.MILLISECONDS.toSeconds(remaining) + " seconds", remaining);
+        }
+        if (trialRunning) {
+            throw new OpenCircuitException("Artifactory at " + url + " failed " + consecutiveFailures +
+                    " consecutive requests, not sending requests to it until a trial request succeeds", 0);
+        }
+        trialRunning = true;
+        return true;
+    }
+
+    /**
+     * The server answered, closing the circuit
+     *
+     * @param trial The value returned by {@link #checkClosed()} for the request
+     */
+    public synchronized void recordSuccess(boolean trial) {
+        consecutiveFailures = 0;
+        openUntil = 0;
+        requestDone(trial);
+    }
+
+    /**
+     * The server could not be reached or failed to handle the request
+     *
+     * @param trial The value returned by {@link #checkClosed()} for the request
+     */
+    public synchronized void recordFailure(boolean trial) {
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURES_THRESHOLD) {
+            openUntil = System.currentTimeMillis() + COOL_DOWN;
+        }
+        requestDone(trial);
+    }
+
+    /**
+     * The request failed for a reason unrelated to the server, if it was the trial of a half open circuit the next
+     * request becomes the trial
+     *
+     * @param trial The value returned by {@link #checkClosed()} for the request
+     */
+    public synchronized void recordIgnored(boolean trial) {
+        requestDone(trial);
+    }
+
+    /**
+     * Requests sent before the circuit opened may complete while the trial request is running, only the trial
+     * request itself lets another one through
+     */
+    private void requestDone(boolean trial) {
+        if (trial) {
+            trialRunning = false;
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit is open
+     */
+    public static class OpenCircuitException extends IOException {
+        private final long remainingTime;
+
+        public OpenCircuitException(String message, long remainingTime) {
+            super(message);
+            this.remainingTime = remainingTime;
+        }
+
+        /**
+         * @return Time in milliseconds until the circuit is half open, 0 if it is half open and waits for its trial
+         */
+        public long getRemainingTime() {
+            return remainingTime;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.config;
+
+import hudson.model.Computer;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A value fetched from an Artifactory server and kept for a limited time. Once expired, the value is still returned
+ * while it is refreshed in the background, so callers wait on the server only when nothing was fetched yet.
+ * A failed fetch is kept as well, for a shorter time: the previous value, or null if there is none, is returned
+ * without waiting until it is retried in the background. Concurrent callers share a single fetch.
+ */
+abstract class RefreshingValue<T> {
+
+    /**
+     * Time in milliseconds after which a failed fetch is retried
+     */
+    private static final long FAILURE_TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(
+            Long.getLong(RefreshingValue.class.getName() + ".failureTimeToLiveSeconds", 60));
+
+    private final long timeToLive;
+    private T value;
+    /**
+     * True once a fetch completed, whether it succeeded or not
+     */
+    private boolean fetched;
+    private long expiryTime;
+    private FutureTask<T> fetch;
+    /**
+     * Incremented on each invalidation, so fetches started before it are ignored
+     */
+    private long generation;
+
+    /**
+     * @param timeToLive Time in milliseconds after which the value is refreshed
+     */
+    RefreshingValue(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @return The fetched value, failures should be thrown rather than returned
+     */
+    protected abstract T fetch() throws IOException;
+
+    /**
+     * @return The current value, or null if it could not be fetched
+     */
+    public T get() {
+        FutureTask<T> task;
+        boolean fetchHere = false;
+        synchronized (this) {
+            if (fetched) {
+                return peek();
+            }
+            if (fetch == null) {
+                fetch = createFetch();
+                fetchHere = true;
+            }
+            task = fetch;
+        }
+
+        if (fetchHere) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already reported by the fetch
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link #get()}, but never waits for the server: if nothing was fetched yet it is fetched in the
+     * background
+     *
+     * @return The current value, or null if it was not fetched yet or could not be fetched
+     */
+    public synchronized T peek() {
+        if (!fetched || System.currentTimeMillis() > expiryTime) {
+            refresh();
+        }
+        return value;
+    }
+
+    /**
+     * Starts fetching a new value in the background, unless a fetch is already running
+     */
+    public synchronized void refresh() {
+        if (fetch == null) {
+            fetch = createFetch();
+            Computer.threadPoolForRemoting.submit(fetch);
+        }
+    }
+
+    /**
+     * Drops the current value, the next caller fetches a new one
+     */
+    public synchronized void invalidate() {
+        value = null;
+        fetched = false;
+        fetch = null;
+        generation++;
+    }
+
+    private FutureTask<T> createFetch() {
+        final long fetchGeneration = generation;
+        return new FutureTask<T>(new Callable<T>() {
+            public T call() throws IOException {
+                T result = null;
+                try {
+                    result = fetch();
+                    return result;
+                } finally {
+                    synchronized (RefreshingValue.this) {
+                        if (fetchGeneration == generation) {
+                            fetch = null;
+                            fetched = true;
+                            if (result != null) {
+                                value = result;
+                                expiryTime = System.currentTimeMillis() + timeToLive;
+                            } else {
+                                expiryTime = System.currentTimeMillis() + FAILURE_TIME_TO_LIVE;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.config;
+
+import org.jfrog.build.client.ArtifactoryVersion;
+
+/**
+ * What an Artifactory server supports, as probed from its version. Probing is done on first use and once in a while
+ * after that by {@link ArtifactoryServer#getCapabilities()}, so checking capabilities rarely requires a request to
+ * the server, and {@link ArtifactoryServer#getCachedCapabilities()} never does.
+ */
+public class ServerCapabilities {
+
+    private final ArtifactoryVersion version;
+
+    public ServerCapabilities(ArtifactoryVersion version) {
+        this.version = version;
+    }
+
+    public ArtifactoryVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @return True if the server has the Pro addons
+     */
+    public boolean isPro() {
+        return version.hasAddons();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.jfrog.build.client.DeployDetails;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCalculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Deploys many artifacts with a single request: the artifacts are zipped while being sent, and Artifactory explodes
+ * the archive into the target repository, each artifact at its own path. The archive is never written to disk, and
+ * the checksums of each artifact are calculated while it is zipped, so each file is read once.
+ * Not thread safe, each thread should use its own instance.
+ */
+public class ArchiveDeployer extends ArtifactoryRestClient {
+
+    public ArchiveDeployer(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    /**
+     * @param repositoryKey The repository to deploy to
+     * @param archiveName   Name of the archive, only visible to Artifactory while exploding it
+     * @param artifacts     Artifact paths mapped to the files to deploy to them
+     * @param properties    Properties to attach to the deployed artifacts, null for none
+     * @return The details of the deployed artifacts, with their checksums
+     */
+    public List<DeployDetails> deploy(String repositoryKey, String archiveName, Map<String, File> artifacts,
+            Map<String, String> properties) throws IOException {
+        StringBuilder url = new StringBuilder(server.getUrl()).append("/").append(repositoryKey);
+        appendPath(url, archiveName);
+        appendMatrixParams(url, properties);
+        HttpPut put = new HttpPut(url.toString());
+        put.setHeader("X-Explode-Archive", "true");
+        ArchiveEntity archive = new ArchiveEntity(artifacts);
+        put.setEntity(archive);
+
+        int status = execute(put);
+        if (status != HttpStatus.SC_CREATED && status != HttpStatus.SC_OK) {
+            throw new HttpResponseException(status, "Failed to deploy archive to " + repositoryKey +
+                    ": HTTP response code: " + status);
+        }
+
+        List<DeployDetails> deployed = Lists.newArrayList();
+        for (Map.Entry<String, File> artifact : artifacts.entrySet()) {
+            Map<String, String> checksums = archive.checksums.get(artifact.getKey());
+            deployed.add(new DeployDetails.Builder()
+                    .file(artifact.getValue())
+                    .artifactPath(artifact.getKey())
+                    .targetRepository(repositoryKey)
+                    .md5(checksums.get(ChecksumCalculator.MD5)).sha1(checksums.get(ChecksumCalculator.SHA1))
+                    .build());
+        }
+        return deployed;
+    }
+
+    /**
+     * Zips the artifacts straight into the request body. The length is unknown so the archive is sent in chunks.
+     */
+    private static class ArchiveEntity extends AbstractHttpEntity {
+        private final Map<String, File> artifacts;
+        /**
+         * Artifact paths mapped to the checksums calculated by the last write
+         */
+        private final Map<String, Map<String, String>> checksums = Maps.newHashMap();
+
+        private ArchiveEntity(Map<String, File> artifacts) {
+            this.artifacts = artifacts;
+            setContentType("application/zip");
+            setChunked(true);
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("The archive can only be written");
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+
+        public void writeTo(OutputStream outstream) throws IOException {
+            checksums.clear();
+            ZipOutputStream zip = new ZipOutputStream(outstream);
+            // Most of the time goes to the network, don't wait on compression
+            zip.setLevel(Deflater.BEST_SPEED);
+            for (Map.Entry<String, File> artifact : artifacts.entrySet()) {
+                String artifactPath = artifact.getKey();
+                zip.putNextEntry(new ZipEntry(StringUtils.removeStart(artifactPath, "/")));
+                try {
+                    checksums.put(artifactPath, ChecksumCalculator.copyAndCalculateChecksums(artifact.getValue(),
+                            zip, ChecksumCalculator.MD5, ChecksumCalculator.SHA1));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException("Could not find checksum algorithm: " + e.getMessage(), e);
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.FileEntity;
+import org.jfrog.build.client.DeployDetails;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Uploads artifacts like the build info client does, but reports failed responses with their status code, so the
+ * deployer can tell which failures are worth retrying.
+ * Not thread safe, each deploying thread should use its own instance.
+ */
+public class ArtifactUploader extends ArtifactoryRestClient {
+
+    public ArtifactUploader(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    /**
+     * @param details    The artifact to upload
+     * @param properties Properties to attach to the deployed artifact
+     * @throws HttpResponseException If Artifactory did not create the artifact
+     */
+    public void upload(DeployDetails details, Map<String, String> properties) throws IOException {
+        HttpPut put = new HttpPut(createDeploymentUrl(details, properties));
+        if (StringUtils.isNotBlank(details.getSha1())) {
+            put.setHeader("X-Checksum-Sha1", details.getSha1());
+        }
+        if (StringUtils.isNotBlank(details.getMd5())) {
+            put.setHeader("X-Checksum", details.getMd5());
+        }
+        put.setEntity(new FileEntity(details.getFile(), "application/octet-stream"));
+
+        int status = execute(put);
+        if (status != HttpStatus.SC_CREATED && status != HttpStatus.SC_OK) {
+            throw new HttpResponseException(status, "Failed to deploy " + details.getTargetRepository() + "/" +
+                    StringUtils.removeStart(details.getArtifactPath(), "/") + ": HTTP response code: " + status);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.jfrog.hudson.plugins.artifactory.generic;
 
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
@@ -18,7 +19,6 @@ import org.jfrog.build.api.Dependency;
 import org.jfrog.build.api.dependency.BuildDependency;
 import org.jfrog.build.client.ProxyConfiguration;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
-import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
 import org.jfrog.hudson.plugins.artifactory.ArtifactoryBuilder;
 import org.jfrog.hudson.plugins.artifactory.BuildInfoAwareConfigurator;
 import org.jfrog.hudson.plugins.artifactory.DeployerOverrider;
@@ -57,6 +57,46 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
     private final IncludesExcludes envVarsPatterns;
     private final boolean discardOldBuilds;
     private final boolean discardBuildArtifacts;
+    /**
+     * Number of concurrent uploads used when deploying the published artifacts
+     */
+    private final int deployThreads;
+    /**
+     * Try to deploy artifacts by checksum before uploading their content
+     */
+    private final boolean checksumDeploy;
+    /**
+     * Number of concurrent downloads used when resolving artifacts
+     */
+    private final int resolveThreads;
+    /**
+     * Share the resolved artifacts with the other builds running on the same node
+     */
+    private final boolean useNodeCache;
+    /**
+     * Search and download the resolved artifacts from the node running the build instead of from the master
+     */
+    private final boolean resolveOnAgent;
+    /**
+     * Delete the files resolved by the previous build which are no longer resolved, tracked in resolution manifests
+     */
+    private final boolean incrementalSync;
+    /**
+     * Deploy after the build completed, from the master, instead of holding the build executor while deploying
+     */
+    private final boolean asyncDeploy;
+    /**
+     * Number of times a failed upload is retried
+     */
+    private final int deployRetries;
+    /**
+     * Set the build properties on the deployed folders once the artifacts are uploaded, instead of on each artifact
+     */
+    private final boolean batchProperties;
+    /**
+     * Deploy the artifacts as a single archive exploded by Artifactory
+     */
+    private final boolean archiveDeploy;
     private transient List<Dependency> publishedDependencies;
     private transient List<BuildDependency> buildDependencies;
 
@@ -64,7 +104,9 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
     public ArtifactoryGenericConfigurator(ServerDetails details, Credentials overridingDeployerCredentials,
             String deployPattern, String resolvePattern, String matrixParams, boolean deployBuildInfo,
             boolean includeEnvVars, IncludesExcludes envVarsPatterns, boolean discardOldBuilds,
-            boolean discardBuildArtifacts) {
+            boolean discardBuildArtifacts, int deployThreads, boolean checksumDeploy, int resolveThreads,
+            boolean useNodeCache, boolean asyncDeploy, int deployRetries, boolean batchProperties,
+            boolean archiveDeploy, boolean resolveOnAgent, boolean incrementalSync) {
         this.details = details;
         this.overridingDeployerCredentials = overridingDeployerCredentials;
         this.deployPattern = deployPattern;
@@ -75,6 +117,16 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
         this.envVarsPatterns = envVarsPatterns;
         this.discardOldBuilds = discardOldBuilds;
         this.discardBuildArtifacts = discardBuildArtifacts;
+        this.deployThreads = deployThreads;
+        this.checksumDeploy = checksumDeploy;
+        this.resolveThreads = resolveThreads;
+        this.useNodeCache = useNodeCache;
+        this.asyncDeploy = asyncDeploy;
+        this.deployRetries = deployRetries;
+        this.batchProperties = batchProperties;
+        this.archiveDeploy = archiveDeploy;
+        this.resolveOnAgent = resolveOnAgent;
+        this.incrementalSync = incrementalSync;
     }
 
     public String getArtifactoryName() {
@@ -109,6 +161,57 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
         return matrixParams;
     }
 
+    /**
+     * @return Number of parallel uploads to use for the deployment. Configurations saved before this setting existed
+     *         deploy sequentially.
+     */
+    public int getDeployThreads() {
+        return deployThreads > 0 ? deployThreads : 1;
+    }
+
+    /**
+     * @return Number of parallel downloads, and so of connections to the server, to use for the resolution.
+     *         Configurations saved before this setting existed resolve sequentially.
+     */
+    public int getResolveThreads() {
+        return resolveThreads > 0 ? resolveThreads : 1;
+    }
+
+    public boolean isUseNodeCache() {
+        return useNodeCache;
+    }
+
+    public boolean isResolveOnAgent() {
+        return resolveOnAgent;
+    }
+
+    public boolean isIncrementalSync() {
+        return incrementalSync;
+    }
+
+    /**
+     * @return Number of retries of a failed upload. Configurations saved before this setting existed don't retry.
+     */
+    public int getDeployRetries() {
+        return Math.max(0, deployRetries);
+    }
+
+    public boolean isBatchProperties() {
+        return batchProperties;
+    }
+
+    public boolean isArchiveDeploy() {
+        return archiveDeploy;
+    }
+
+    public boolean isAsyncDeploy() {
+        return asyncDeploy;
+    }
+
+    public boolean isChecksumDeploy() {
+        return checksumDeploy;
+    }
+
     public boolean isDeployBuildInfo() {
         return deployBuildInfo;
     }
@@ -209,20 +312,17 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
             proxyConfiguration.username = proxy.getUserName();
             proxyConfiguration.password = proxy.getPassword();
         }
-        ArtifactoryDependenciesClient dependenciesClient = server.createArtifactoryDependenciesClient(
-                preferredDeployer.getUsername(), preferredDeployer.getPassword(), proxyConfiguration,
-                listener);
         try {
-            GenericArtifactsResolver artifactsResolver = new GenericArtifactsResolver(build, listener,
-                    dependenciesClient, getResolvePattern());
-            publishedDependencies = artifactsResolver.retrievePublishedDependencies();
-            buildDependencies = artifactsResolver.retrieveBuildDependencies();
+            GenericArtifactsResolver artifactsResolver = new GenericArtifactsResolver(build, listener, server,
+                    preferredDeployer, proxyConfiguration, getResolveThreads(), isUseNodeCache(), isResolveOnAgent(),
+                    isIncrementalSync(), getResolvePattern());
+            artifactsResolver.resolve();
+            publishedDependencies = artifactsResolver.getPublishedDependencies();
+            buildDependencies = artifactsResolver.getBuildDependencies();
 
             return createEnvironmentOnSuccessfulSetup();
         } catch (Exception e) {
             e.printStackTrace(listener.error(e.getMessage()));
-        } finally {
-            dependenciesClient.shutdown();
         }
 
         return null;
@@ -238,42 +338,95 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
                     return true;    // build failed. Don't publish
                 }
 
-                Credentials preferredDeployer;
-                ArtifactoryServer server = getArtifactoryServer();
-                if (isOverridingDefaultDeployer()) {
-                    preferredDeployer = getOverridingDeployerCredentials();
-                } else {
-                    preferredDeployer = server.getResolvingCredentials();
-                }
-                ArtifactoryBuildInfoClient client = server.createArtifactoryClient(preferredDeployer.getUsername(),
-                        preferredDeployer.getPassword(), server.createProxyConfiguration(Hudson.getInstance().proxy));
-                try {
-                    GenericArtifactsDeployer artifactsDeployer = new GenericArtifactsDeployer(build,
-                            ArtifactoryGenericConfigurator.this, listener, preferredDeployer);
-                    artifactsDeployer.deploy();
-
-                    List<Artifact> deployedArtifacts = artifactsDeployer.getDeployedArtifacts();
+                if (isAsyncDeploy()) {
+                    BuildInfoResultAction action = null;
                     if (deployBuildInfo) {
-                        new GenericBuildInfoDeployer(ArtifactoryGenericConfigurator.this, client, build,
-                                listener, deployedArtifacts, buildDependencies, publishedDependencies).deploy();
-                        // add the result action (prefer always the same index)
-                        build.getActions().add(0, new BuildInfoResultAction(getArtifactoryUrl(), build));
+                        action = new BuildInfoResultAction(getArtifactoryUrl(), build,
+                                BuildInfoResultAction.DeploymentStatus.QUEUED);
+                        build.getActions().add(0, action);
                     }
-
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace(listener.error(e.getMessage()));
-                } finally {
-                    client.shutdown();
+                    if (GenericDeploymentQueue.getInstance().submit(build, ArtifactoryGenericConfigurator.this,
+                            listener, publishedDependencies, buildDependencies)) {
+                        listener.getLogger().println("[JFROG] Deployment queued, it will start once the build " +
+                                "completed");
+                        return true;
+                    }
+                    listener.getLogger().println("[JFROG] The deployment queue is full, deploying now");
+                    build.getActions().remove(action);
                 }
 
-                // failed
-                build.setResult(Result.FAILURE);
+                if (!deployArtifacts(build, listener, build.getWorkspace(), publishedDependencies,
+                        buildDependencies)) {
+                    // failed
+                    build.setResult(Result.FAILURE);
+                } else if (deployBuildInfo) {
+                    // add the result action (prefer always the same index)
+                    build.getActions().add(0, new BuildInfoResultAction(getArtifactoryUrl(), build));
+                }
                 return true;
             }
         };
     }
 
+    /**
+     * Copies the artifacts to deploy out of the workspace, so they can be deployed after the build released it
+     *
+     * @return True if the artifacts were staged, failures are reported to the listener
+     */
+    boolean stageArtifacts(AbstractBuild build, BuildListener listener, FilePath stagingDir) {
+        try {
+            GenericArtifactsDeployer artifactsDeployer = new GenericArtifactsDeployer(build,
+                    ArtifactoryGenericConfigurator.this, listener, null, build.getWorkspace());
+            if (artifactsDeployer.stage(stagingDir)) {
+                return true;
+            }
+            listener.getLogger().println("[JFROG] The deploy pattern points outside of the workspace");
+        } catch (Exception e) {
+            e.printStackTrace(listener.error(e.getMessage()));
+        }
+        return false;
+    }
+
+    /**
+     * Deploys the artifacts of the build and its build info
+     *
+     * @param workingDir The directory the deploy pattern is relative to
+     * @return True if the deployment succeeded, failures are reported to the listener
+     */
+    boolean deployArtifacts(AbstractBuild build, BuildListener listener, FilePath workingDir,
+            List<Dependency> publishedDependencies, List<BuildDependency> buildDependencies) {
+        Credentials preferredDeployer;
+        ArtifactoryServer server = getArtifactoryServer();
+        if (isOverridingDefaultDeployer()) {
+            preferredDeployer = getOverridingDeployerCredentials();
+        } else {
+            preferredDeployer = server.getResolvingCredentials();
+        }
+        try {
+            GenericArtifactsDeployer artifactsDeployer = new GenericArtifactsDeployer(build,
+                    ArtifactoryGenericConfigurator.this, listener, preferredDeployer, workingDir);
+            artifactsDeployer.deploy();
+
+            List<Artifact> deployedArtifacts = artifactsDeployer.getDeployedArtifacts();
+            if (deployBuildInfo) {
+                // Acquired only now, so it isn't held while the deploying threads acquire their own clients
+                ArtifactoryBuildInfoClient client = server.acquireArtifactoryClient(preferredDeployer.getUsername(),
+                        preferredDeployer.getPassword(), server.createProxyConfiguration(Hudson.getInstance().proxy));
+                try {
+                    new GenericBuildInfoDeployer(ArtifactoryGenericConfigurator.this, client, preferredDeployer,
+                            build, listener, deployedArtifacts, buildDependencies, publishedDependencies).deploy();
+                } finally {
+                    server.releaseArtifactoryClient(client);
+                }
+            }
+
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace(listener.error(e.getMessage()));
+        }
+        return false;
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl) super.getDescriptor();
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import hudson.Util;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.jfrog.build.client.DeployDetails;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
+
+/**
+ * Base for clients sending Artifactory REST requests which the build info clients don't support. Uses the timeout,
+ * proxy and credentials of the server like the build info clients do.
+ * Not thread safe, each thread should use its own instance.
+ */
+public abstract class ArtifactoryRestClient {
+
+    protected final ArtifactoryServer server;
+    private final String authorization;
+    private final DefaultHttpClient httpClient;
+
+    protected ArtifactoryRestClient(ArtifactoryServer server, Credentials credentials,
+            ProxyConfiguration proxyConfiguration) {
+        this.server = server;
+        this.authorization = createAuthorizationHeader(credentials);
+        this.httpClient = new DefaultHttpClient();
+        HttpParams params = httpClient.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, server.getTimeout() * 1000);
+        HttpConnectionParams.setSoTimeout(params, server.getTimeout() * 1000);
+        if (!server.isBypassProxy() && proxyConfiguration != null) {
+            params.setParameter(ConnRoutePNames.DEFAULT_PROXY,
+                    new HttpHost(proxyConfiguration.host, proxyConfiguration.port));
+            if (proxyConfiguration.username != null) {
+                httpClient.getCredentialsProvider().setCredentials(
+                        new AuthScope(proxyConfiguration.host, proxyConfiguration.port),
+                        new UsernamePasswordCredentials(proxyConfiguration.username, proxyConfiguration.password));
+            }
+        }
+    }
+
+    public void shutdown() {
+        httpClient.getConnectionManager().shutdown();
+    }
+
+    /**
+     * Sends the request with the credentials of the client, the response content is discarded
+     *
+     * @return The response status code
+     */
+    protected int execute(HttpRequestBase request) throws IOException {
+        HttpResponse response = executeRequest(request);
+        if (response.getEntity() != null) {
+            response.getEntity().consumeContent();
+        }
+        return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * Sends the request with the credentials of the client, the response content must be consumed by the caller
+     */
+    protected HttpResponse executeRequest(HttpRequestBase request) throws IOException {
+        if (authorization != null) {
+            request.setHeader("Authorization", authorization);
+        }
+        return httpClient.execute(request);
+    }
+
+    /**
+     * @param properties Properties to attach to the deployed artifact as matrix parameters, null for none
+     * @return The URL the artifact is deployed to
+     */
+    protected String createDeploymentUrl(DeployDetails details, Map<String, String> properties)
+            throws UnsupportedEncodingException {
+        StringBuilder url = new StringBuilder(server.getUrl()).append("/").append(details.getTargetRepository());
+        appendPath(url, details.getArtifactPath());
+        return appendMatrixParams(url, properties).toString();
+    }
+
+    /**
+     * @param properties Properties to append to the URL as matrix parameters, null for none
+     */
+    protected static StringBuilder appendMatrixParams(StringBuilder url, Map<String, String> properties)
+            throws UnsupportedEncodingException {
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                url.append(";").append(URLEncoder.encode(property.getKey(), "UTF-8"))
+                        .append("=").append(URLEncoder.encode(property.getValue(), "UTF-8"));
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Appends the path to the URL, encoding each of its elements
+     */
+    protected static StringBuilder appendPath(StringBuilder url, String path) {
+        for (String pathElement : StringUtils.split(path, "/")) {
+            url.append("/").append(Util.rawEncode(pathElement));
+        }
+        return url;
+    }
+
+    private static String createAuthorizationHeader(Credentials credentials) {
+        if (credentials == null || StringUtils.isBlank(credentials.getUsername())) {
+            return null;
+        }
+        String userPass = credentials.getUsername() + ":" + StringUtils.defaultString(credentials.getPassword());
+        try {
+            return "Basic " + new String(Base64.encodeBase64(userPass.getBytes("UTF-8")), "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
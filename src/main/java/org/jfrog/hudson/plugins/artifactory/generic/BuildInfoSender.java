@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.jfrog.build.api.Build;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends build info to Artifactory, serializing it straight into the request body. Unlike the build info client, the
+ * JSON document is never held in memory, which matters for builds with many thousands of artifacts and dependencies.
+ * Not thread safe, each thread should use its own instance.
+ */
+public class BuildInfoSender extends ArtifactoryRestClient {
+
+    /**
+     * Compress the build info sent, for servers accepting gzip encoded requests
+     */
+    public static final boolean GZIP = Boolean.getBoolean(BuildInfoSender.class.getName() + ".gzip");
+
+    private static final String BUILD_INFO_CONTENT_TYPE = "application/vnd.org.jfrog.artifactory+json";
+
+    public BuildInfoSender(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    public void send(Build buildInfo) throws IOException {
+        HttpPut put = new HttpPut(server.getUrl() + "/api/build");
+        put.setEntity(new BuildInfoEntity(buildInfo, GZIP));
+        int status = execute(put);
+        if (status != HttpStatus.SC_NO_CONTENT && status != HttpStatus.SC_OK) {
+            throw new HttpResponseException(status, "Failed to send build info: HTTP response code: " + status);
+        }
+    }
+
+    /**
+     * Writes the build info as JSON while it is sent. The length is unknown so it is sent in chunks.
+     */
+    private static class BuildInfoEntity extends AbstractHttpEntity {
+        private final Build buildInfo;
+        private final boolean gzip;
+
+        private BuildInfoEntity(Build buildInfo, boolean gzip) {
+            this.buildInfo = buildInfo;
+            this.gzip = gzip;
+            setContentType(BUILD_INFO_CONTENT_TYPE);
+            if (gzip) {
+                setContentEncoding("gzip");
+            }
+            setChunked(true);
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("The build info can only be written");
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+
+        public void writeTo(OutputStream outstream) throws IOException {
+            GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(outstream) : null;
+            JsonGenerator generator = createJsonFactory().createJsonGenerator(
+                    gzipStream != null ? gzipStream : outstream, JsonEncoding.UTF8);
+            generator.writeObject(buildInfo);
+            generator.flush();
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+            outstream.flush();
+        }
+
+        /**
+         * Serializes like the build info client does, leaving out null fields
+         */
+        private JsonFactory createJsonFactory() {
+            JsonFactory jsonFactory = new JsonFactory();
+            ObjectMapper mapper = new ObjectMapper(jsonFactory);
+            mapper.getSerializationConfig().setSerializationInclusion(JsonSerialize.Inclusion.NON_NULL);
+            jsonFactory.setCodec(mapper);
+            return jsonFactory;
+        }
+    }
+}
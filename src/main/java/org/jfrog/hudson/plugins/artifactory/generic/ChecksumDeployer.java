@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPut;
+import org.jfrog.build.client.DeployDetails;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Deploys artifacts by checksum only: Artifactory is asked to create the artifact out of content it already stores,
+ * so the file itself is never sent. Artifacts unknown to the server still need a regular deployment.
+ * Not thread safe, each deploying thread should use its own instance.
+ */
+public class ChecksumDeployer extends ArtifactoryRestClient {
+
+    /**
+     * Files smaller than this are cheaper to upload than to try to deploy by checksum first
+     */
+    public static final long MIN_FILE_SIZE = 10 * 1024;
+
+    public ChecksumDeployer(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    /**
+     * @return True if the artifact is a candidate for a checksum deployment
+     */
+    public static boolean isApplicable(DeployDetails details) {
+        return StringUtils.isNotBlank(details.getSha1()) && details.getFile().length() >= MIN_FILE_SIZE;
+    }
+
+    /**
+     * Tries to deploy the artifact by its checksum.
+     *
+     * @param details    The artifact to deploy
+     * @param properties Properties to attach to the deployed artifact
+     * @return True if Artifactory created the artifact, false if it doesn't have the content and the artifact should
+     *         be uploaded
+     */
+    public boolean tryDeploy(DeployDetails details, Map<String, String> properties) throws IOException {
+        HttpPut put = new HttpPut(createDeploymentUrl(details, properties));
+        put.setHeader("X-Checksum-Deploy", "true");
+        put.setHeader("X-Checksum-Sha1", details.getSha1());
+        if (StringUtils.isNotBlank(details.getMd5())) {
+            put.setHeader("X-Checksum", details.getMd5());
+        }
+
+        int status = execute(put);
+        return status == HttpStatus.SC_CREATED || status == HttpStatus.SC_OK;
+    }
+}
@@ -1,58 +1,192 @@
 package org.jfrog.hudson.plugins.artifactory.generic;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.remoting.VirtualChannel;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jfrog.build.api.Dependency;
 import org.jfrog.build.api.dependency.DownloadableArtifact;
-import org.jfrog.build.api.util.FileChecksumCalculator;
 import org.jfrog.build.api.util.Log;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
 import org.jfrog.build.extractor.clientConfiguration.util.DependenciesDownloader;
 import org.jfrog.build.extractor.clientConfiguration.util.DependenciesDownloaderHelper;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCache;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCalculator;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumInputStream;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Primary implementation of dependencies downloader,
  * handles Jenkins slaves and re-use a client for HTTP communication.
+ * When given several clients, the artifacts are split between them and downloaded concurrently, one connection per
+ * client.
  *
  * @author Shay Yaakov
  */
 public class DependenciesDownloaderImpl implements DependenciesDownloader {
 
-    private ArtifactoryDependenciesClient client;
+    /**
+     * Checksums of the resolved files, kept for the whole node under the workspaces root
+     */
+    private static final String CHECKSUM_CACHE_PATH = "artifactory-plugin/checksums.properties";
+    /**
+     * Artifacts resolved by all the builds of the node, kept under the workspaces root
+     */
+    private static final String NODE_CACHE_PATH = "artifactory-plugin/cache";
+    /**
+     * Resolution manifests of all the workspaces of the node, kept under the workspaces root
+     */
+    private static final String MANIFESTS_PATH = "artifactory-plugin/manifests";
+    /**
+     * Suffix of the temporary files artifacts are downloaded to
+     */
+    private static final String DOWNLOAD_SUFFIX = ".download";
+
+    private List<ArtifactoryDependenciesClient> clients;
     private FilePath workspace;
     private Log log;
+    /**
+     * Files shared with concurrent resolutions into the same workspace, null if there are none
+     */
+    private final ResolvedFiles sharedFiles;
+    /**
+     * Copy artifacts already resolved on the node from the node artifacts cache instead of downloading them
+     */
+    private final boolean useNodeCache;
+    /**
+     * Trust the checksums recorded in the resolution manifests of unmodified files, and record the resolved files in
+     * the shared files for the manifests to be updated once all the resolutions are done
+     */
+    private final boolean incrementalSync;
+    /**
+     * The absolute workspace path, resolved once to save a remote call per artifact
+     */
+    private FilePath absoluteWorkspace;
+    /**
+     * Local state of the files in each directory checked so far, keyed by the directory remote path
+     */
+    private final ConcurrentMap<String, Map<String, LocalFileState>> directorySnapshots = Maps.newConcurrentMap();
+    /**
+     * Checksums the files about to be downloaded are expected to have, keyed by the file remote path
+     */
+    private final ConcurrentMap<String, Map<String, String>> expectedChecksums = Maps.newConcurrentMap();
 
     public DependenciesDownloaderImpl(ArtifactoryDependenciesClient client, FilePath workspace, Log log) {
-        this.client = client;
+        this(Collections.singletonList(client), workspace, null, false, false, log);
+    }
+
+    /**
+     * @param clients     Clients to download with, the first one is also used for searching the artifacts
+     * @param sharedFiles Files shared with other resolutions running concurrently into the same workspace. Removal of
+     *                    unresolved files is left to the caller once they are all done. May be null.
+     * @param useNodeCache Whether to share the resolved artifacts with the other builds of the node
+     * @param incrementalSync Whether to use the resolution manifests of the workspace, requires shared files
+     */
+    public DependenciesDownloaderImpl(List<ArtifactoryDependenciesClient> clients, FilePath workspace,
+            ResolvedFiles sharedFiles, boolean useNodeCache, boolean incrementalSync, Log log) {
+        this.clients = clients;
         this.workspace = workspace;
+        this.sharedFiles = sharedFiles;
+        this.useNodeCache = useNodeCache;
+        this.incrementalSync = incrementalSync && sharedFiles != null;
         this.log = log;
     }
 
     public ArtifactoryDependenciesClient getClient() {
-        return client;
+        return clients.get(0);
     }
 
     public List<Dependency> download(Set<DownloadableArtifact> downloadableArtifacts) throws IOException {
-        DependenciesDownloaderHelper helper = new DependenciesDownloaderHelper(this, log);
-        return helper.downloadDependencies(downloadableArtifacts);
+        try {
+            int threads = Math.min(clients.size(), downloadableArtifacts.size());
+            if (threads <= 1) {
+                DependenciesDownloaderHelper helper = new DependenciesDownloaderHelper(this, log);
+                return helper.downloadDependencies(downloadableArtifacts);
+            }
+            return downloadConcurrently(downloadableArtifacts, threads);
+        } finally {
+            saveNodeCaches();
+        }
+    }
+
+    /**
+     * Splits the artifacts between the clients and downloads each part in its own thread. Each part only knows about
+     * the files it resolved, so the removal of unresolved files is collected from all the parts and done once they
+     * are all downloaded.
+     */
+    private List<Dependency> downloadConcurrently(Set<DownloadableArtifact> downloadableArtifacts, int threads)
+            throws IOException {
+        List<Set<DownloadableArtifact>> parts = Lists.newArrayList();
+        for (int i = 0; i < threads; i++) {
+            parts.add(Sets.<DownloadableArtifact>newHashSet());
+        }
+        int i = 0;
+        for (DownloadableArtifact downloadableArtifact : downloadableArtifacts) {
+            parts.get(i++ % threads).add(downloadableArtifact);
+        }
+
+        log.info("Downloading " + downloadableArtifacts.size() + " artifacts using " + threads + " threads");
+        ResolvedFiles partsFiles = sharedFiles != null ? sharedFiles : new ResolvedFiles();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Dependency>>> downloads = Lists.newArrayList();
+            for (int part = 0; part < threads; part++) {
+                final Set<DownloadableArtifact> artifacts = parts.get(part);
+                final DependenciesDownloader partDownloader = new PartDownloader(clients.get(part), partsFiles);
+                downloads.add(executor.submit(new Callable<List<Dependency>>() {
+                    public List<Dependency> call() throws IOException {
+                        return new DependenciesDownloaderHelper(partDownloader, log).downloadDependencies(artifacts);
+                    }
+                }));
+            }
+
+            List<Dependency> dependencies = Lists.newArrayList();
+            for (Future<List<Dependency>> download : downloads) {
+                dependencies.addAll(download.get());
+            }
+            if (sharedFiles == null) {
+                removeUnusedFiles(partsFiles.getAllResolvedFiles(), partsFiles.getForDeletionFiles());
+            }
+            return dependencies;
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while downloading dependencies", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Dependencies download failed: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     public String getTargetDir(String targetDir, String relativeDir) throws IOException {
         try {
-            FilePath targetDirFile = new FilePath(workspace, targetDir).child(relativeDir);
-            return targetDirFile.absolutize().getRemote();
+            FilePath targetDirFile = new FilePath(getAbsoluteWorkspace(), targetDir).child(relativeDir);
+            return targetDirFile.getRemote();
         } catch (InterruptedException e) {
             log.warn("Caught interrupted exception: " + e.getLocalizedMessage());
         }
@@ -60,36 +194,95 @@ public class DependenciesDownloaderImpl implements DependenciesDownloader {
         return null;
     }
 
+    /**
+     * The checksums are calculated while the file is streamed to a temporary file next to it, which replaces the file
+     * only if they match the checksums the file was expected to have, so the file is never read again and is never
+     * left partially written or corrupted. Large artifacts of a {@link RangeDownloadingClient} are downloaded to the
+     * temporary file with concurrent range requests when the workspace is on this node.
+     */
     public Map<String, String> saveDownloadedFile(InputStream is, String filePath) throws IOException {
+        FilePath child = workspace.child(filePath);
+        FilePath tempFile = child.getParent().child("." + child.getName() + DOWNLOAD_SUFFIX);
         try {
-            FilePath child = workspace.child(filePath);
-            child.copyFrom(is);
-            return child.act(new DownloadFileCallable(log));
+            Map<String, String> checksums;
+            if (is instanceof RangeDownloadingClient.RangeDownload && !tempFile.isRemote()) {
+                checksums = ((RangeDownloadingClient.RangeDownload) is).downloadTo(new File(tempFile.getRemote()));
+            } else {
+                ChecksumInputStream checksumStream = new ChecksumInputStream(is, ChecksumCalculator.MD5,
+                        ChecksumCalculator.SHA1);
+                tempFile.copyFrom(checksumStream);
+                Map<String, String> calculated = checksumStream.getChecksums();
+                checksums = Maps.newHashMap();
+                checksums.put("md5", calculated.get(ChecksumCalculator.MD5));
+                checksums.put("sha1", calculated.get(ChecksumCalculator.SHA1));
+            }
+
+            Map<String, String> expected = expectedChecksums.remove(child.getRemote());
+            if (expected != null && !expected.equals(checksums)) {
+                // The checksums are returned anyway, for the caller to report the mismatch
+                log.warn("Checksums of the downloaded '" + child.getRemote() + "' don't match, expected " +
+                        expected + " but got " + checksums);
+                tempFile.delete();
+                return checksums;
+            }
+
+            child.act(new CommitDownloadCallable(tempFile.getRemote(), getChecksumCachePath(), getNodeCachePath(),
+                    checksums));
+            recordResolved(child, checksums.get("md5"), checksums.get("sha1"));
+            Map<String, LocalFileState> snapshot = directorySnapshots.get(child.getParent().getRemote());
+            if (snapshot != null) {
+                snapshot.put(child.getName(), new LocalFileState(false, checksums));
+            }
+            return checksums;
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("Could not find checksum algorithm: " + e.getLocalizedMessage());
         } catch (InterruptedException e) {
             log.warn("Caught interrupted exception: " + e.getLocalizedMessage());
         } finally {
             IOUtils.closeQuietly(is);
         }
 
+        deleteQuietly(tempFile);
         return null;
     }
 
+    private void deleteQuietly(FilePath file) {
+        try {
+            file.delete();
+        } catch (Exception e) {
+            log.warn("Could not delete '" + file.getRemote() + "': " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * The state of all the files in the directory of the checked file is fetched in a single call the first time the
+     * directory is checked. Only files which have no valid cached checksums require another call to the node.
+     * A missing file which some build already resolved on the node is copied from the node artifacts cache, and
+     * reported as existing so it is not downloaded.
+     */
     public boolean isFileExistsLocally(String filePath, String md5, String sha1) throws IOException {
         try {
             FilePath child = workspace.child(filePath);
-            if (!child.exists()) {
-                return false;
+            if (sharedFiles != null && !sharedFiles.claim(child.getRemote(), sha1)) {
+                // Another resolution is responsible for this file
+                return true;
+            }
+            if (StringUtils.isNotBlank(md5) && StringUtils.isNotBlank(sha1)) {
+                // Verified once downloaded, if it is
+                Map<String, String> expected = Maps.newHashMap();
+                expected.put("md5", md5);
+                expected.put("sha1", sha1);
+                expectedChecksums.put(child.getRemote(), expected);
             }
 
-            // If it's a folder return true since we don't care about it, not going to download a folder anyway
-            if (child.isDirectory()) {
+            if (isValidLocally(child, md5, sha1) || copyFromNodeCache(child, md5, sha1)) {
+                recordResolved(child, md5, sha1);
                 return true;
             }
-
-            Map<String, String> checksumsMap = child.act(new DownloadFileCallable(log));
-            return checksumsMap != null &&
-                    StringUtils.isNotBlank(md5) && StringUtils.equals(md5, checksumsMap.get("md5")) &&
-                    StringUtils.isNotBlank(sha1) && StringUtils.equals(sha1, checksumsMap.get("sha1"));
+            return false;
         } catch (InterruptedException e) {
             log.warn("Caught interrupted exception: " + e.getLocalizedMessage());
         }
@@ -97,55 +290,543 @@ public class DependenciesDownloaderImpl implements DependenciesDownloader {
         return false;
     }
 
+    private void recordResolved(FilePath child, String md5, String sha1) {
+        if (incrementalSync && StringUtils.isNotBlank(md5) && StringUtils.isNotBlank(sha1)) {
+            sharedFiles.recordResolved(child.getRemote(), md5, sha1);
+        }
+    }
+
+    private boolean isValidLocally(FilePath child, String md5, String sha1)
+            throws IOException, InterruptedException {
+        LocalFileState state = getDirectorySnapshot(child.getParent()).get(child.getName());
+        if (state == null) {
+            return false;
+        }
+
+        // If it's a folder return true since we don't care about it, not going to download a folder anyway
+        if (state.directory) {
+            return true;
+        }
+
+        if (StringUtils.isBlank(md5) || StringUtils.isBlank(sha1)) {
+            return false;
+        }
+
+        if (state.checksums != null) {
+            return StringUtils.equals(md5, state.checksums.get("md5")) &&
+                    StringUtils.equals(sha1, state.checksums.get("sha1"));
+        }
+
+        return child.act(new VerifyLocalFileCallable(getChecksumCachePath(), md5, sha1, log));
+    }
+
+    private boolean copyFromNodeCache(FilePath child, String md5, String sha1)
+            throws IOException, InterruptedException {
+        String nodeCachePath = getNodeCachePath();
+        if (nodeCachePath == null || StringUtils.isBlank(md5) || StringUtils.isBlank(sha1)) {
+            return false;
+        }
+        if (!child.act(new CopyFromNodeCacheCallable(nodeCachePath, getChecksumCachePath(), md5, sha1))) {
+            return false;
+        }
+
+        log.info("Copied '" + child.getRemote() + "' from the node artifacts cache");
+        Map<String, LocalFileState> snapshot = directorySnapshots.get(child.getParent().getRemote());
+        if (snapshot != null) {
+            Map<String, String> checksums = Maps.newHashMap();
+            checksums.put("md5", md5);
+            checksums.put("sha1", sha1);
+            snapshot.put(child.getName(), new LocalFileState(false, checksums));
+        }
+        return true;
+    }
+
     public void removeUnusedArtifactsFromLocal(Set<String> allResolvesFiles, Set<String> forDeletionFiles)
             throws IOException {
+        if (sharedFiles != null) {
+            sharedFiles.deferRemoval(allResolvesFiles, forDeletionFiles);
+        } else {
+            removeUnusedFiles(allResolvesFiles, forDeletionFiles);
+        }
+    }
+
+    /**
+     * Removes the files which were not resolved from the directories of the files to delete
+     */
+    public void removeUnusedFiles(Set<String> allResolvesFiles, Set<String> forDeletionFiles) throws IOException {
+        removeUnusedFiles(workspace, allResolvesFiles, forDeletionFiles, log);
+    }
+
+    /**
+     * Removes the files which were not resolved from the directories of the files to delete, in a single call to the
+     * node of the workspace
+     */
+    public static void removeUnusedFiles(FilePath workspace, Set<String> allResolvesFiles,
+            Set<String> forDeletionFiles, Log log) throws IOException {
+        if (forDeletionFiles.isEmpty()) {
+            return;
+        }
         try {
-            for (String resolvedFile : forDeletionFiles) {
-                FilePath resolvedFileParent = workspace.child(resolvedFile).getParent();
-                if (!resolvedFileParent.exists()) {
-                    continue;
-                }
+            List<String> deletedFiles = workspace.act(new RemoveUnusedFilesCallable(allResolvesFiles,
+                    forDeletionFiles));
+            for (String deletedFile : deletedFiles) {
+                log.info("Deleted unresolved file '" + deletedFile + "'");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Caught interrupted exception: " + e.getLocalizedMessage());
+        }
+    }
 
-                List<FilePath> fileSiblings = resolvedFileParent.list();
-                if (fileSiblings == null || fileSiblings.isEmpty()) {
-                    continue;
-                }
+    private synchronized FilePath getAbsoluteWorkspace() throws IOException, InterruptedException {
+        if (absoluteWorkspace == null) {
+            absoluteWorkspace = workspace.absolutize();
+        }
+        return absoluteWorkspace;
+    }
 
-                for (FilePath sibling : fileSiblings) {
-                    String siblingPath = sibling.absolutize().getRemote();
-                    if (!isResolvedOrParentOfResolvedFile(allResolvesFiles, siblingPath)) {
-                        sibling.deleteRecursive();
-                        log.info("Deleted unresolved file '" + siblingPath + "'");
-                    }
-                }
+    private Map<String, LocalFileState> getDirectorySnapshot(FilePath directory)
+            throws IOException, InterruptedException {
+        Map<String, LocalFileState> snapshot = directorySnapshots.get(directory.getRemote());
+        if (snapshot == null) {
+            snapshot = new ConcurrentHashMap<String, LocalFileState>(
+                    directory.act(new DirectorySnapshotCallable(getChecksumCachePath(),
+                            incrementalSync ? getManifestsPath(workspace) : null)));
+            Map<String, LocalFileState> existing = directorySnapshots.putIfAbsent(directory.getRemote(), snapshot);
+            if (existing != null) {
+                snapshot = existing;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Downloads a part of the artifacts with a client of its own, and records the files to remove instead of
+     * removing them
+     */
+    private class PartDownloader implements DependenciesDownloader {
+        private final ArtifactoryDependenciesClient client;
+        private final ResolvedFiles partsFiles;
+
+        private PartDownloader(ArtifactoryDependenciesClient client, ResolvedFiles partsFiles) {
+            this.client = client;
+            this.partsFiles = partsFiles;
+        }
+
+        public ArtifactoryDependenciesClient getClient() {
+            return client;
+        }
+
+        public List<Dependency> download(Set<DownloadableArtifact> downloadableArtifacts) throws IOException {
+            return new DependenciesDownloaderHelper(this, log).downloadDependencies(downloadableArtifacts);
+        }
+
+        public String getTargetDir(String targetDir, String relativeDir) throws IOException {
+            return DependenciesDownloaderImpl.this.getTargetDir(targetDir, relativeDir);
+        }
+
+        public Map<String, String> saveDownloadedFile(InputStream is, String filePath) throws IOException {
+            return DependenciesDownloaderImpl.this.saveDownloadedFile(is, filePath);
+        }
+
+        public boolean isFileExistsLocally(String filePath, String md5, String sha1) throws IOException {
+            return DependenciesDownloaderImpl.this.isFileExistsLocally(filePath, md5, sha1);
+        }
+
+        public void removeUnusedArtifactsFromLocal(Set<String> allResolvesFiles, Set<String> forDeletionFiles) {
+            partsFiles.deferRemoval(allResolvesFiles, forDeletionFiles);
+        }
+    }
+
+    private String getChecksumCachePath() {
+        FilePath workspacesRoot = workspace.getParent();
+        if (workspacesRoot == null) {
+            return null;
+        }
+        return new FilePath(workspacesRoot, CHECKSUM_CACHE_PATH).getRemote();
+    }
+
+    /**
+     * @return The directory of the resolution manifests of the workspace, null if it has no parent to keep them in
+     */
+    private static String getManifestsPath(FilePath workspace) {
+        FilePath workspacesRoot = workspace.getParent();
+        if (workspacesRoot == null) {
+            return null;
+        }
+        return new FilePath(workspacesRoot, MANIFESTS_PATH + "/" + DigestUtils.shaHex(workspace.getRemote()))
+                .getRemote();
+    }
+
+    /**
+     * Deletes the files resolved by the previous resolution into the workspace which were not resolved this time, as
+     * long as they weren't modified since, and records the resolved files in the manifests of their directories.
+     *
+     * @param resolvedFiles The checksums of all the resolved files keyed by their remote paths
+     */
+    public static void syncManifests(FilePath workspace, Map<String, Map<String, String>> resolvedFiles, Log log)
+            throws IOException {
+        String manifestsPath = getManifestsPath(workspace);
+        if (manifestsPath == null) {
+            return;
+        }
+        try {
+            List<String> deletedFiles = workspace.act(new SyncManifestsCallable(manifestsPath, resolvedFiles));
+            for (String deletedFile : deletedFiles) {
+                log.info("Deleted stale file '" + deletedFile + "'");
             }
         } catch (InterruptedException e) {
             log.warn("Caught interrupted exception: " + e.getLocalizedMessage());
         }
     }
 
-    private boolean isResolvedOrParentOfResolvedFile(Set<String> resolvedFiles, final String path) {
-        return Iterables.any(resolvedFiles, new Predicate<String>() {
-            public boolean apply(String filePath) {
-                return StringUtils.equals(filePath, path) || StringUtils.startsWith(filePath, path);
+    private String getNodeCachePath() {
+        FilePath workspacesRoot = workspace.getParent();
+        if (!useNodeCache || workspacesRoot == null) {
+            return null;
+        }
+        return new FilePath(workspacesRoot, NODE_CACHE_PATH).getRemote();
+    }
+
+    /**
+     * Saves the checksum cache and evicts the least recently used artifacts from the node artifacts cache, in a
+     * single call to the node
+     */
+    private void saveNodeCaches() {
+        String checksumCachePath = getChecksumCachePath();
+        if (checksumCachePath == null) {
+            return;
+        }
+        try {
+            workspace.act(new SaveNodeCachesCallable(checksumCachePath, getNodeCachePath()));
+        } catch (Exception e) {
+            log.warn("Could not save the node caches under " + workspace.getParent() + ": " +
+                    e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Calculates the checksums of a file using the checksum cache of the node, if there is one.
+     *
+     * @return The checksums keyed by "md5" and "sha1"
+     */
+    private static Map<String, String> calculateChecksums(File f, String checksumCachePath)
+            throws IOException, NoSuchAlgorithmException {
+        ChecksumCache cache = checksumCachePath != null ?
+                ChecksumCache.getPersistentCache(new File(checksumCachePath)) : new ChecksumCache();
+        Map<String, String> checksums = cache.getChecksums(f);
+        Map<String, String> result = Maps.newHashMap();
+        result.put("md5", checksums.get(ChecksumCalculator.MD5));
+        result.put("sha1", checksums.get(ChecksumCalculator.SHA1));
+        return result;
+    }
+
+    /**
+     * Moves a downloaded and verified temporary file to its place, recording its checksums so it is never read, and
+     * adds it to the node artifacts cache if one is used
+     */
+    private static class CommitDownloadCallable implements FilePath.FileCallable<Void> {
+        private final String tempFilePath;
+        private final String checksumCachePath;
+        private final String nodeCachePath;
+        private final Map<String, String> checksums;
+
+        public CommitDownloadCallable(String tempFilePath, String checksumCachePath, String nodeCachePath,
+                Map<String, String> checksums) {
+            this.tempFilePath = tempFilePath;
+            this.checksumCachePath = checksumCachePath;
+            this.nodeCachePath = nodeCachePath;
+            this.checksums = checksums;
+        }
+
+        public Void invoke(File f, VirtualChannel channel) throws IOException {
+            File tempFile = new File(tempFilePath);
+            if (!tempFile.renameTo(f)) {
+                // Renaming over an existing file fails on some platforms
+                f.delete();
+                if (!tempFile.renameTo(f)) {
+                    tempFile.delete();
+                    throw new IOException("Could not move downloaded file " + tempFile + " to " + f);
+                }
             }
-        });
+            if (checksumCachePath != null) {
+                ChecksumCache.getPersistentCache(new File(checksumCachePath)).put(f, checksums.get("md5"),
+                        checksums.get("sha1"));
+            }
+            if (nodeCachePath != null) {
+                new NodeArtifactsCache(new File(nodeCachePath)).add(checksums.get("sha1"), f);
+            }
+            return null;
+        }
     }
 
-    private static class DownloadFileCallable implements FilePath.FileCallable<Map<String, String>> {
+    /**
+     * Checks in a single call to the node whether a file already exists there with the expected checksums. Files
+     * which weren't modified since their checksums were cached are not read at all.
+     */
+    private static class VerifyLocalFileCallable implements FilePath.FileCallable<Boolean> {
+        private final String checksumCachePath;
+        private final String md5;
+        private final String sha1;
         private Log log;
 
-        public DownloadFileCallable(Log log) {
+        public VerifyLocalFileCallable(String checksumCachePath, String md5, String sha1, Log log) {
+            this.checksumCachePath = checksumCachePath;
+            this.md5 = md5;
+            this.sha1 = sha1;
             this.log = log;
         }
 
-        public Map<String, String> invoke(File f, VirtualChannel channel) throws IOException {
+        public Boolean invoke(File f, VirtualChannel channel) throws IOException {
+            if (!f.exists()) {
+                return false;
+            }
+
+            // If it's a folder return true since we don't care about it, not going to download a folder anyway
+            if (f.isDirectory()) {
+                return true;
+            }
+
+            if (StringUtils.isBlank(md5) || StringUtils.isBlank(sha1)) {
+                return false;
+            }
+
             try {
-                return FileChecksumCalculator.calculateChecksums(f, "md5", "sha1");
+                Map<String, String> checksumsMap = calculateChecksums(f, checksumCachePath);
+                return StringUtils.equals(md5, checksumsMap.get("md5")) &&
+                        StringUtils.equals(sha1, checksumsMap.get("sha1"));
             } catch (NoSuchAlgorithmException e) {
                 log.warn("Could not find checksum algorithm: " + e.getLocalizedMessage());
             }
 
+            return false;
+        }
+    }
+
+    /**
+     * Copies an artifact from the node artifacts cache to the file, recording its known checksums so it is never read
+     */
+    private static class CopyFromNodeCacheCallable implements FilePath.FileCallable<Boolean> {
+        private final String nodeCachePath;
+        private final String checksumCachePath;
+        private final String md5;
+        private final String sha1;
+
+        public CopyFromNodeCacheCallable(String nodeCachePath, String checksumCachePath, String md5, String sha1) {
+            this.nodeCachePath = nodeCachePath;
+            this.checksumCachePath = checksumCachePath;
+            this.md5 = md5;
+            this.sha1 = sha1;
+        }
+
+        public Boolean invoke(File f, VirtualChannel channel) throws IOException {
+            if (f.isDirectory() || !new NodeArtifactsCache(new File(nodeCachePath)).copyTo(sha1, f)) {
+                return false;
+            }
+            if (checksumCachePath != null) {
+                ChecksumCache.getPersistentCache(new File(checksumCachePath)).put(f, md5, sha1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * What is known about a local file without reading it
+     */
+    private static class LocalFileState implements Serializable {
+        private final boolean directory;
+        /**
+         * The checksums keyed by "md5" and "sha1", null if they are not cached
+         */
+        private final Map<String, String> checksums;
+
+        private LocalFileState(boolean directory, Map<String, String> checksums) {
+            this.directory = directory;
+            this.checksums = checksums;
+        }
+    }
+
+    /**
+     * Lists a directory along with the cached checksums of its files. Files are never read.
+     */
+    private static class DirectorySnapshotCallable implements FilePath.FileCallable<Map<String, LocalFileState>> {
+        private final String checksumCachePath;
+        private final String manifestsPath;
+
+        /**
+         * @param manifestsPath The directory of the resolution manifests of the workspace, null to ignore them
+         */
+        public DirectorySnapshotCallable(String checksumCachePath, String manifestsPath) {
+            this.checksumCachePath = checksumCachePath;
+            this.manifestsPath = manifestsPath;
+        }
+
+        public Map<String, LocalFileState> invoke(File dir, VirtualChannel channel) throws IOException {
+            Map<String, LocalFileState> snapshot = Maps.newHashMap();
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return snapshot;
+            }
+
+            ChecksumCache cache = checksumCachePath != null ?
+                    ChecksumCache.getPersistentCache(new File(checksumCachePath)) : null;
+            ResolutionManifest manifest = manifestsPath != null ?
+                    ResolutionManifest.load(ResolutionManifest.getManifestFile(new File(manifestsPath), dir)) : null;
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    snapshot.put(file.getName(), new LocalFileState(true, null));
+                    continue;
+                }
+                Map<String, String> checksums = null;
+                Map<String, String> cached = cache != null ? cache.getCachedChecksums(file) : null;
+                ResolutionManifest.Entry entry = manifest != null ? manifest.getEntries().get(file.getName()) : null;
+                if (cached != null) {
+                    checksums = Maps.newHashMap();
+                    checksums.put("md5", cached.get(ChecksumCalculator.MD5));
+                    checksums.put("sha1", cached.get(ChecksumCalculator.SHA1));
+                } else if (entry != null && entry.matches(file)) {
+                    // Resolved by the last resolution and not modified since
+                    checksums = Maps.newHashMap();
+                    checksums.put("md5", entry.getMd5());
+                    checksums.put("sha1", entry.getSha1());
+                }
+                snapshot.put(file.getName(), new LocalFileState(false, checksums));
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Diffs the resolved files with the resolution manifests of the workspace in a single call to the node. Files of
+     * the manifests which were not resolved and were not modified since they were resolved are deleted, then the
+     * manifests are replaced by ones holding the resolved files.
+     */
+    private static class SyncManifestsCallable implements FilePath.FileCallable<List<String>> {
+        private final String manifestsPath;
+        private final Map<String, Map<String, String>> resolvedFiles;
+
+        public SyncManifestsCallable(String manifestsPath, Map<String, Map<String, String>> resolvedFiles) {
+            this.manifestsPath = manifestsPath;
+            this.resolvedFiles = resolvedFiles;
+        }
+
+        public List<String> invoke(File workspace, VirtualChannel channel) throws IOException {
+            Map<File, Map<String, ResolutionManifest.Entry>> resolvedByDirectory = Maps.newHashMap();
+            for (Map.Entry<String, Map<String, String>> resolved : resolvedFiles.entrySet()) {
+                File file = new File(resolved.getKey()).getAbsoluteFile();
+                if (!file.isFile()) {
+                    continue;
+                }
+                File directory = file.getParentFile();
+                Map<String, ResolutionManifest.Entry> entries = resolvedByDirectory.get(directory);
+                if (entries == null) {
+                    entries = Maps.newHashMap();
+                    resolvedByDirectory.put(directory, entries);
+                }
+                entries.put(file.getName(), ResolutionManifest.Entry.of(file, resolved.getValue().get("md5"),
+                        resolved.getValue().get("sha1")));
+            }
+
+            List<String> deletedFiles = Lists.newArrayList();
+            File manifestsDir = new File(manifestsPath);
+            File[] manifestFiles = manifestsDir.listFiles();
+            if (manifestFiles != null) {
+                for (File manifestFile : manifestFiles) {
+                    ResolutionManifest previous = ResolutionManifest.load(manifestFile);
+                    if (previous == null) {
+                        continue;
+                    }
+                    Map<String, ResolutionManifest.Entry> resolved =
+                            resolvedByDirectory.get(previous.getDirectory().getAbsoluteFile());
+                    for (Map.Entry<String, ResolutionManifest.Entry> entry : previous.getEntries().entrySet()) {
+                        if (resolved != null && resolved.containsKey(entry.getKey())) {
+                            continue;
+                        }
+                        File stale = new File(previous.getDirectory(), entry.getKey());
+                        if (entry.getValue().matches(stale) && stale.delete()) {
+                            deletedFiles.add(stale.getAbsolutePath());
+                        }
+                    }
+                    if (resolved == null) {
+                        manifestFile.delete();
+                    }
+                }
+            }
+
+            for (Map.Entry<File, Map<String, ResolutionManifest.Entry>> directory : resolvedByDirectory.entrySet()) {
+                new ResolutionManifest(directory.getKey(), directory.getValue()).save(
+                        ResolutionManifest.getManifestFile(manifestsDir, directory.getKey()));
+            }
+            return deletedFiles;
+        }
+    }
+
+    /**
+     * Deletes in a single call to the node all the files that were not resolved from the directories of the files
+     * which were.
+     */
+    private static class RemoveUnusedFilesCallable implements FilePath.FileCallable<List<String>> {
+        private final Set<String> allResolvesFiles;
+        private final Set<String> forDeletionFiles;
+
+        public RemoveUnusedFilesCallable(Set<String> allResolvesFiles, Set<String> forDeletionFiles) {
+            this.allResolvesFiles = allResolvesFiles;
+            this.forDeletionFiles = forDeletionFiles;
+        }
+
+        public List<String> invoke(File workspace, VirtualChannel channel) throws IOException {
+            // Each directory is listed once, however many of its files were resolved
+            Set<File> parentDirs = Sets.newHashSet();
+            for (String resolvedFile : forDeletionFiles) {
+                File file = new File(resolvedFile);
+                if (!file.isAbsolute()) {
+                    file = new File(workspace, resolvedFile);
+                }
+                parentDirs.add(file.getAbsoluteFile().getParentFile());
+            }
+
+            NavigableSet<String> resolvedFiles = Sets.newTreeSet(allResolvesFiles);
+            List<String> deletedFiles = Lists.newArrayList();
+            for (File parentDir : parentDirs) {
+                File[] fileSiblings = parentDir.listFiles();
+                if (fileSiblings == null) {
+                    continue;
+                }
+
+                for (File sibling : fileSiblings) {
+                    String siblingPath = sibling.getAbsolutePath();
+                    if (!isResolvedOrParentOfResolvedFile(resolvedFiles, siblingPath)) {
+                        Util.deleteRecursive(sibling);
+                        deletedFiles.add(siblingPath);
+                    }
+                }
+            }
+            return deletedFiles;
+        }
+
+        /**
+         * All the paths starting with the given path are sorted right after it, so only the first path not smaller
+         * than it has to be checked
+         */
+        private boolean isResolvedOrParentOfResolvedFile(NavigableSet<String> resolvedFiles, String path) {
+            String candidate = resolvedFiles.ceiling(path);
+            return candidate != null && candidate.startsWith(path);
+        }
+    }
+
+    private static class SaveNodeCachesCallable implements FilePath.FileCallable<Void> {
+        private final String checksumCachePath;
+        private final String nodeCachePath;
+
+        public SaveNodeCachesCallable(String checksumCachePath, String nodeCachePath) {
+            this.checksumCachePath = checksumCachePath;
+            this.nodeCachePath = nodeCachePath;
+        }
+
+        public Void invoke(File f, VirtualChannel channel) throws IOException {
+            ChecksumCache.getPersistentCache(new File(checksumCachePath)).save();
+            if (nodeCachePath != null) {
+                new NodeArtifactsCache(new File(nodeCachePath)).evict();
+            }
             return null;
         }
     }
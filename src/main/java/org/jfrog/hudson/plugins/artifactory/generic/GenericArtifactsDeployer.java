@@ -1,10 +1,12 @@
 package org.jfrog.hudson.plugins.artifactory.generic;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.collect.TreeMultimap;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Util;
@@ -13,27 +15,46 @@ import hudson.model.BuildListener;
 import hudson.model.Cause;
 import hudson.model.Hudson;
 import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpResponseException;
 import org.jfrog.build.api.Artifact;
 import org.jfrog.build.api.BuildInfoFields;
 import org.jfrog.build.api.builder.ArtifactBuilder;
-import org.jfrog.build.api.util.FileChecksumCalculator;
 import org.jfrog.build.client.DeployDetails;
 import org.jfrog.build.client.ProxyConfiguration;
-import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.build.extractor.clientConfiguration.util.PublishedItemsHelper;
 import org.jfrog.hudson.plugins.artifactory.action.ActionableHelper;
 import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.CircuitBreaker;
 import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCache;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCalculator;
 import org.jfrog.hudson.plugins.artifactory.util.ExtractorUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Deploys artifacts to Artifactory. This class is used only in free style generic configurator.
@@ -41,23 +62,35 @@ import java.util.Set;
  * @author Shay Yaakov
  */
 public class GenericArtifactsDeployer {
-    private static final String SHA1 = "SHA1";
-    private static final String MD5 = "MD5";
+    private static final String SHA1 = ChecksumCalculator.SHA1;
+    private static final String MD5 = ChecksumCalculator.MD5;
+
+    /**
+     * Delay before the first retry of a failed upload, doubled on each further retry
+     */
+    private static final long RETRY_BASE_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final long RETRY_MAX_DELAY = TimeUnit.MINUTES.toMillis(1);
 
     private AbstractBuild build;
     private ArtifactoryGenericConfigurator configurator;
     private BuildListener listener;
     private Credentials credentials;
+    private FilePath workingDir;
     private EnvVars env;
     private List<Artifact> artifactsToDeploy = Lists.newArrayList();
 
+    /**
+     * @param workingDir The directory the deploy pattern is relative to, the workspace unless the artifacts were
+     *                   staged elsewhere
+     */
     public GenericArtifactsDeployer(AbstractBuild build, ArtifactoryGenericConfigurator configurator,
-            BuildListener listener, Credentials credentials)
+            BuildListener listener, Credentials credentials, FilePath workingDir)
             throws IOException, InterruptedException, NoSuchAlgorithmException {
         this.build = build;
         this.configurator = configurator;
         this.listener = listener;
         this.credentials = credentials;
+        this.workingDir = workingDir;
         this.env = build.getEnvironment(listener);
     }
 
@@ -65,23 +98,48 @@ public class GenericArtifactsDeployer {
         return artifactsToDeploy;
     }
 
+    /**
+     * Copies the files matched by the deploy pattern to the given directory, keeping their path relative to the
+     * working directory, so they can be deployed from there once the build released its workspace. The files are
+     * streamed through the channel of the working directory, while the build still holds its executor.
+     *
+     * @return False if a matched file is outside of the working directory, so the files can't be staged
+     */
+    public boolean stage(FilePath target) throws IOException, InterruptedException {
+        Multimap<String, String> pairs = getPatternPairs();
+        List<String> files = pairs.isEmpty() ? Lists.<String>newArrayList() :
+                workingDir.act(new MatchedFilesCallable(pairs));
+        if (files == null) {
+            return false;
+        }
+        target.mkdirs();
+        if (!files.isEmpty()) {
+            workingDir.copyRecursiveTo(new ListedFilesScanner(files), target, "artifacts to deploy");
+        }
+        return true;
+    }
+
     public void deploy()
             throws IOException, InterruptedException {
-        final Multimap<String, File> result = HashMultimap.create();
-        String deployPattern = Util.replaceMacro(configurator.getDeployPattern(), env);
-        deployPattern = StringUtils.replace(deployPattern, "\r\n", "\n");
-        deployPattern = StringUtils.replace(deployPattern, ",", "\n");
-        Multimap<String, String> pairs = PublishedItemsHelper.getPublishedItemsPatternPairs(deployPattern);
+        Multimap<String, String> pairs = getPatternPairs();
         if (pairs.isEmpty()) {
             return;
         }
 
-        FilePath workingDir = build.getWorkspace();
         Map<String, String> propertiesToAdd = getbuildPropertiesMap();
         ArtifactoryServer artifactoryServer = configurator.getArtifactoryServer();
         artifactsToDeploy = workingDir.act(new FilesDeployerCallable(listener, pairs, artifactoryServer, credentials,
                 configurator.getRepositoryKey(), propertiesToAdd,
-                artifactoryServer.createProxyConfiguration(Hudson.getInstance().proxy)));
+                artifactoryServer.createProxyConfiguration(Hudson.getInstance().proxy),
+                configurator.getDeployThreads(), configurator.isChecksumDeploy(), configurator.getDeployRetries(),
+                configurator.isBatchProperties(), configurator.isArchiveDeploy()));
+    }
+
+    private Multimap<String, String> getPatternPairs() {
+        String deployPattern = Util.replaceMacro(configurator.getDeployPattern(), env);
+        deployPattern = StringUtils.replace(deployPattern, "\r\n", "\n");
+        deployPattern = StringUtils.replace(deployPattern, ",", "\n");
+        return PublishedItemsHelper.getPublishedItemsPatternPairs(deployPattern);
     }
 
     private Map<String, String> getbuildPropertiesMap() {
@@ -119,6 +177,100 @@ public class GenericArtifactsDeployer {
         }
     }
 
+    /**
+     * The pattern pairs are independent, so each of them scans the workspace in its own thread
+     *
+     * @return The target paths mapped to the files found, for each pair in the given order
+     */
+    private static List<Multimap<String, File>> scanPatterns(final File workspace,
+            List<Map.Entry<String, String>> pairs) throws IOException, InterruptedException {
+        List<Multimap<String, File>> publishingData = Lists.newArrayList();
+        int threads = Math.min(pairs.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (Map.Entry<String, String> entry : pairs) {
+                publishingData.add(PublishedItemsHelper.buildPublishingData(workspace, entry.getKey(),
+                        entry.getValue()));
+            }
+            return publishingData;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Multimap<String, File>>> scans = Lists.newArrayList();
+            for (final Map.Entry<String, String> entry : pairs) {
+                scans.add(executor.submit(new Callable<Multimap<String, File>>() {
+                    public Multimap<String, File> call() throws IOException {
+                        return PublishedItemsHelper.buildPublishingData(workspace, entry.getKey(),
+                                entry.getValue());
+                    }
+                }));
+            }
+            for (Future<Multimap<String, File>> scan : scans) {
+                publishingData.add(scan.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to find the artifacts to deploy: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return publishingData;
+    }
+
+    /**
+     * Finds the files the deploy patterns match, with the same scan as the deployment
+     */
+    private static class MatchedFilesCallable implements FilePath.FileCallable<List<String>> {
+        private final Multimap<String, String> patternPairs;
+
+        private MatchedFilesCallable(Multimap<String, String> patternPairs) {
+            this.patternPairs = patternPairs;
+        }
+
+        /**
+         * @return The paths of the matched files relative to the workspace, null if a file is outside of it
+         */
+        public List<String> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+            String workspacePath = workspace.getCanonicalPath() + File.separator;
+            Set<String> files = Sets.newTreeSet();
+            for (Multimap<String, File> patternData : scanPatterns(workspace,
+                    Lists.newArrayList(patternPairs.entries()))) {
+                if (patternData == null) {
+                    continue;
+                }
+                for (File file : patternData.values()) {
+                    String filePath = file.getCanonicalPath();
+                    if (!filePath.startsWith(workspacePath)) {
+                        return null;
+                    }
+                    files.add(filePath.substring(workspacePath.length()).replace(File.separatorChar, '/'));
+                }
+            }
+            return Lists.newArrayList(files);
+        }
+    }
+
+    /**
+     * Visits exactly the listed files, unlike the Ant based scanners which apply the default excludes
+     */
+    private static class ListedFilesScanner extends DirScanner {
+        private final List<String> relativePaths;
+
+        private ListedFilesScanner(List<String> relativePaths) {
+            this.relativePaths = relativePaths;
+        }
+
+        @Override
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            for (String relativePath : relativePaths) {
+                visitor.visit(new File(dir, relativePath), relativePath);
+            }
+        }
+    }
+
     private static class FilesDeployerCallable implements FilePath.FileCallable<List<Artifact>> {
 
         private BuildListener listener;
@@ -128,10 +280,22 @@ public class GenericArtifactsDeployer {
         private final String repositoryKey;
         private Map<String, String> buildProperties;
         private ProxyConfiguration proxyConfiguration;
+        private final int deployThreads;
+        private final boolean checksumDeploy;
+        private final int deployRetries;
+        /**
+         * Set the build properties once per folder after the upload, instead of on each deployed artifact
+         */
+        private final boolean batchProperties;
+        /**
+         * Deploy all the artifacts as a single archive, with the build properties attached to the archive
+         */
+        private final boolean archiveDeploy;
 
         public FilesDeployerCallable(BuildListener listener, Multimap<String, String> patternPairs,
                 ArtifactoryServer server, Credentials credentials, String repositoryKey,
-                Map<String, String> buildProperties, ProxyConfiguration proxyConfiguration) {
+                Map<String, String> buildProperties, ProxyConfiguration proxyConfiguration, int deployThreads,
+                boolean checksumDeploy, int deployRetries, boolean batchProperties, boolean archiveDeploy) {
             this.listener = listener;
             this.patternPairs = patternPairs;
             this.server = server;
@@ -139,26 +303,38 @@ public class GenericArtifactsDeployer {
             this.repositoryKey = repositoryKey;
             this.buildProperties = buildProperties;
             this.proxyConfiguration = proxyConfiguration;
+            this.deployThreads = deployThreads;
+            this.checksumDeploy = checksumDeploy;
+            this.deployRetries = deployRetries;
+            this.batchProperties = batchProperties;
+            this.archiveDeploy = archiveDeploy;
         }
 
         public List<Artifact> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
             Multimap<String, File> targetPathToFilesMap = buildTargetPathToFiles(workspace);
-            Set<DeployDetails> artifactsToDeploy = Sets.newHashSet();
+            Multimap<String, File> artifactPathToFiles = TreeMultimap.create();
             for (Map.Entry<String, File> entry : targetPathToFilesMap.entries()) {
-                artifactsToDeploy.addAll(buildDeployDetailsFromFileEntry(entry));
+                artifactPathToFiles.put(calculateArtifactPath(entry), entry.getValue());
             }
 
-            ArtifactoryBuildInfoClient client = server.createArtifactoryClient(credentials.getUsername(),
-                    credentials.getPassword(), proxyConfiguration);
-            try {
-                deploy(client, artifactsToDeploy);
-                return convertDeployDetailsToArtifacts(artifactsToDeploy);
-            } finally {
-                client.shutdown();
+            // Several files may map to the same artifact path, the last one in path order is deployed
+            Multimap<String, File> artifactsToDeploy = TreeMultimap.create();
+            for (Map.Entry<String, Collection<File>> entry : artifactPathToFiles.asMap().entrySet()) {
+                File file = Iterables.getLast(entry.getValue());
+                if (entry.getValue().size() > 1) {
+                    listener.getLogger().println("[JFROG] " + entry.getValue().size() + " files match the artifact " +
+                            "path " + entry.getKey() + ", deploying " + file + " only: " + entry.getValue());
+                }
+                artifactsToDeploy.put(entry.getKey(), file);
             }
+
+            List<DeployDetails> deployedArtifacts = deploy(artifactsToDeploy);
+            // Sorted by target path so the reported artifacts don't depend on the upload order
+            Collections.sort(deployedArtifacts, new DeployDetailsComparator());
+            return convertDeployDetailsToArtifacts(deployedArtifacts);
         }
 
-        private List<Artifact> convertDeployDetailsToArtifacts(Set<DeployDetails> details) {
+        private List<Artifact> convertDeployDetailsToArtifacts(List<DeployDetails> details) {
             List<Artifact> result = Lists.newArrayList();
             for (DeployDetails detail : details) {
                 String ext = FilenameUtils.getExtension(detail.getFile().getName());
@@ -169,48 +345,109 @@ public class GenericArtifactsDeployer {
             return result;
         }
 
-        private void printArtifacts(Set<DeployDetails> list) {
+        private void printArtifacts(Multimap<String, File> artifacts) {
 
-            listener.getLogger().println("[*** Generic ***] About to deploy " + list.size() + " artifacts");
+            listener.getLogger().println("[*** Generic ***] About to deploy " + artifacts.size() + " artifacts");
             int i=1;
-            for(DeployDetails d : list) {
+            for(Map.Entry<String, File> artifact : artifacts.entries()) {
                 String path;
                 try {
-                    path = d.getFile().getCanonicalPath();
+                    path = artifact.getValue().getCanonicalPath();
                 } catch (IOException e) {
                     listener.getLogger().println("[*** Generic ***] " + e.getMessage());
                     path = "N/A";
                 }
-                listener.getLogger().println("[*** Generic ***] " + (i++) + ". Path: " + d.getArtifactPath() + " File path: " + path + " File exists: " + d.getFile().exists());
+                listener.getLogger().println("[*** Generic ***] " + (i++) + ". Path: " + artifact.getKey() + " File path: " + path + " File exists: " + artifact.getValue().exists());
             }
         }
 
-        public void deploy(ArtifactoryBuildInfoClient client, Set<DeployDetails> artifactsToDeploy)
-                throws IOException {
+        /**
+         * Deploys the artifacts using up to {@link #deployThreads} concurrent uploads, each with its own client. A
+         * failed upload doesn't stop the others; all the failures are reported together once every artifact was
+         * handled.
+         * The checksums of each file are calculated by the thread deploying it right before the upload, so the upload
+         * reads the file while it is still cached by the OS, and a file matched by several patterns is read once.
+         *
+         * @param artifactsToDeploy Artifact paths mapped to the file to deploy to each of them
+         * @return The details of the deployed artifacts
+         */
+        public List<DeployDetails> deploy(Multimap<String, File> artifactsToDeploy)
+                throws IOException, InterruptedException {
             printArtifacts(artifactsToDeploy);
-            for (DeployDetails deployDetail : artifactsToDeploy) {
-                StringBuilder deploymentPathBuilder = new StringBuilder(server.getUrl());
-                deploymentPathBuilder.append("/").append(repositoryKey);
-                if (!deployDetail.getArtifactPath().startsWith("/")) {
-                    deploymentPathBuilder.append("/");
+            List<DeployDetails> deployed = Collections.synchronizedList(Lists.<DeployDetails>newArrayList());
+            if (artifactsToDeploy.isEmpty()) {
+                return deployed;
+            }
+            if (archiveDeploy && artifactsToDeploy.size() > 1) {
+                deployed.addAll(deployArchive(artifactsToDeploy));
+                return deployed;
+            }
+
+            Queue<Map.Entry<String, File>> pending =
+                    new ConcurrentLinkedQueue<Map.Entry<String, File>>(artifactsToDeploy.entries());
+            Map<String, String> failures = Collections.synchronizedMap(Maps.<String, String>newTreeMap());
+            ChecksumCache checksumCache = new ChecksumCache();
+            int threads = Math.min(deployThreads, artifactsToDeploy.size());
+            if (threads <= 1) {
+                new DeployWorker(pending, checksumCache, deployed, failures).run();
+            } else {
+                listener.getLogger().println("[JFROG] Deploying artifacts using " + threads + " threads");
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<?>> workers = Lists.newArrayList();
+                    for (int i = 0; i < threads; i++) {
+                        workers.add(executor.submit(new DeployWorker(pending, checksumCache, deployed, failures)));
+                    }
+                    for (Future<?> worker : workers) {
+                        worker.get();
+                    }
+                } catch (ExecutionException e) {
+                    throw new IOException("Artifacts deployment failed: " + e.getCause().getMessage(), e.getCause());
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                listener.getLogger().println("[JFROG] Failed to deploy " + failures.size() + " out of " +
+                        artifactsToDeploy.size() + " artifacts:");
+                for (Map.Entry<String, String> failure : failures.entrySet()) {
+                    listener.getLogger().println("[JFROG] " + failure.getKey() + ": " + failure.getValue());
                 }
-                deploymentPathBuilder.append(deployDetail.getArtifactPath());
-                listener.getLogger().println("[JFROG] Deploying artifact: " + deploymentPathBuilder.toString());
-                client.deployArtifact(deployDetail);
+                throw new IOException("Failed to deploy " + failures.size() + " artifacts");
+            }
+            if (batchProperties) {
+                setBuildProperties(deployed);
+            }
+            return deployed;
+        }
+
+        private String getDeploymentPath(String artifactPath) {
+            StringBuilder deploymentPathBuilder = new StringBuilder(server.getUrl());
+            deploymentPathBuilder.append("/").append(repositoryKey);
+            if (!artifactPath.startsWith("/")) {
+                deploymentPathBuilder.append("/");
             }
+            deploymentPathBuilder.append(artifactPath);
+            return deploymentPathBuilder.toString();
         }
 
-        private Multimap<String, File> buildTargetPathToFiles(File workspace) throws IOException {
+        /**
+         * The results are logged in the order of the patterns
+         */
+        private Multimap<String, File> buildTargetPathToFiles(File workspace)
+                throws IOException, InterruptedException {
+            List<Map.Entry<String, String>> pairs = Lists.newArrayList(patternPairs.entries());
+            List<Multimap<String, File>> publishingData = scanPatterns(workspace, pairs);
+
             Multimap<String, File> result = HashMultimap.create();
-            for (Map.Entry<String, String> entry : patternPairs.entries()) {
-                String pattern = entry.getKey();
-                String targetPath = entry.getValue();
-                Multimap<String, File> publishingData = PublishedItemsHelper.buildPublishingData(workspace, pattern,
-                        targetPath);
-                if (publishingData != null) {
+            for (int i = 0; i < pairs.size(); i++) {
+                String pattern = pairs.get(i).getKey();
+                Multimap<String, File> patternData = publishingData.get(i);
+                if (patternData != null) {
                     listener.getLogger().println(
-                            "[JFROG] For pattern: " + pattern + " " + publishingData.size() + " artifacts were found");
-                    result.putAll(publishingData);
+                            "[JFROG] For pattern: " + pattern + " " + patternData.size() + " artifacts were found");
+                    result.putAll(patternData);
                 } else {
                     listener.getLogger().println("[JFROG] For pattern: " + pattern + " no artifacts were found");
                 }
@@ -219,29 +456,322 @@ public class GenericArtifactsDeployer {
             return result;
         }
 
-        private Set<DeployDetails> buildDeployDetailsFromFileEntry(Map.Entry<String, File> fileEntry)
-                throws IOException {
-            Set<DeployDetails> result = Sets.newHashSet();
-            String targetPath = fileEntry.getKey();
-            File artifactFile = fileEntry.getValue();
-            String path = PublishedItemsHelper.calculateTargetPath(targetPath, artifactFile);
-            path = StringUtils.replace(path, "//", "/");
+        private String calculateArtifactPath(Map.Entry<String, File> fileEntry) {
+            String path = PublishedItemsHelper.calculateTargetPath(fileEntry.getKey(), fileEntry.getValue());
+            return StringUtils.replace(path, "//", "/");
+        }
 
+        private DeployDetails buildDeployDetails(String artifactPath, File artifactFile, ChecksumCache checksumCache)
+                throws IOException {
             // calculate the sha1 checksum that is not given by Jenkins and add it to the deploy artifactsToDeploy
             Map<String, String> checksums = Maps.newHashMap();
             try {
-                checksums = FileChecksumCalculator.calculateChecksums(artifactFile, SHA1, MD5);
+                checksums = checksumCache.getChecksums(artifactFile);
             } catch (NoSuchAlgorithmException e) {
                 listener.getLogger().println("[JFROG] Could not find checksum algorithm for " + SHA1 + " or " + MD5);
             }
             DeployDetails.Builder builder = new DeployDetails.Builder()
                     .file(artifactFile)
-                    .artifactPath(path)
+                    .artifactPath(artifactPath)
                     .targetRepository(repositoryKey)
-                    .md5(checksums.get(MD5)).sha1(checksums.get(SHA1))
-                    .addProperties(buildProperties);
-            result.add(builder.build());
+                    .md5(checksums.get(MD5)).sha1(checksums.get(SHA1));
+            if (!batchProperties) {
+                builder.addProperties(buildProperties);
+            }
+            return builder.build();
+        }
 
+        /**
+         * Deploys all the artifacts as a single archive exploded by Artifactory, with the build properties attached
+         * to the archive so Artifactory sets them on each extracted artifact. An archive holds a single file per path,
+         * so only the last file of each artifact path is deployed, which is the file a regular deployment leaves
+         * there.
+         */
+        private List<DeployDetails> deployArchive(Multimap<String, File> artifactsToDeploy) throws IOException {
+            final Map<String, File> artifactFiles = Maps.newTreeMap();
+            for (Map.Entry<String, File> artifact : artifactsToDeploy.entries()) {
+                artifactFiles.put(artifact.getKey(), artifact.getValue());
+            }
+
+            final String archiveName = buildProperties.get("build.name") + "-" + buildProperties.get("build.number") +
+                    ".zip";
+            listener.getLogger().println("[JFROG] Deploying " + artifactFiles.size() + " artifacts as a single " +
+                    "archive to " + getDeploymentPath(""));
+            final List<DeployDetails> deployDetails = Lists.newArrayList();
+            final ArchiveDeployer archiveDeployer = new ArchiveDeployer(server, credentials, proxyConfiguration);
+            try {
+                executeWithRetries("deploy the artifacts archive", new RetriableRequest() {
+                    public void execute(int attempt) throws IOException {
+                        deployDetails.addAll(archiveDeployer.deploy(repositoryKey, archiveName, artifactFiles,
+                                buildProperties));
+                    }
+                });
+            } finally {
+                archiveDeployer.shutdown();
+            }
+            return deployDetails;
+        }
+
+        /**
+         * Sets the build properties on the deployed artifacts. A folder gets them with a single recursive request only
+         * if every file under it was deployed by this build, otherwise each artifact under it gets them with a request
+         * of its own, so the artifacts of other builds keep their build properties.
+         */
+        private void setBuildProperties(List<DeployDetails> deployed) throws IOException {
+            Set<String> artifactPaths = Sets.newTreeSet();
+            Set<String> folders = Sets.newTreeSet();
+            for (DeployDetails deployDetail : deployed) {
+                String artifactPath = StringUtils.removeStart(deployDetail.getArtifactPath(), "/");
+                artifactPaths.add(artifactPath);
+                if (artifactPath.contains("/")) {
+                    folders.add(StringUtils.substringBeforeLast(artifactPath, "/"));
+                }
+            }
+            removeNestedFolders(folders);
+
+            final PropertiesSetter propertiesSetter = new PropertiesSetter(server, credentials, proxyConfiguration);
+            try {
+                Set<String> recursivePaths = Sets.newTreeSet();
+                Set<String> filePaths = Sets.newTreeSet(artifactPaths);
+                for (final String folder : folders) {
+                    final List<Set<String>> folderFiles = Lists.newArrayList();
+                    executeWithRetries("list the files of " + getDeploymentPath(folder), new RetriableRequest() {
+                        public void execute(int attempt) throws IOException {
+                            folderFiles.add(propertiesSetter.listFiles(repositoryKey, folder));
+                        }
+                    });
+                    if (artifactPaths.containsAll(folderFiles.get(0))) {
+                        recursivePaths.add(folder);
+                        filePaths.removeAll(folderFiles.get(0));
+                    }
+                }
+
+                listener.getLogger().println("[JFROG] Setting the build properties on " + recursivePaths.size() +
+                        " folders and " + filePaths.size() + " artifacts");
+                for (String folder : recursivePaths) {
+                    setBuildProperties(propertiesSetter, folder, true);
+                }
+                for (String filePath : filePaths) {
+                    setBuildProperties(propertiesSetter, filePath, false);
+                }
+            } finally {
+                propertiesSetter.shutdown();
+            }
+        }
+
+        private void setBuildProperties(final PropertiesSetter propertiesSetter, final String path,
+                final boolean recursive) throws IOException {
+            executeWithRetries("set the build properties on " + getDeploymentPath(path), new RetriableRequest() {
+                public void execute(int attempt) throws IOException {
+                    propertiesSetter.setProperties(repositoryKey, path, buildProperties, recursive);
+                }
+            });
+        }
+
+        /**
+         * Removes the folders which are under another folder of the set
+         */
+        private void removeNestedFolders(Set<String> folders) {
+            Iterator<String> iterator = folders.iterator();
+            while (iterator.hasNext()) {
+                String ancestor = iterator.next();
+                while (ancestor.contains("/")) {
+                    ancestor = StringUtils.substringBeforeLast(ancestor, "/");
+                    if (folders.contains(ancestor)) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Executes the request, retrying it up to {@link #deployRetries} times with an exponential backoff. Requests
+         * are not sent while the circuit breaker of the server is open, but a retry may wait for it to close.
+         *
+         * @param description What the request does, for the log
+         */
+        private void executeWithRetries(String description, RetriableRequest request) throws IOException {
+            CircuitBreaker circuitBreaker = server.getCircuitBreaker();
+            for (int attempt = 0; ; attempt++) {
+                boolean trial;
+                try {
+                    trial = circuitBreaker.checkClosed();
+                } catch (CircuitBreaker.OpenCircuitException e) {
+                    if (attempt >= deployRetries) {
+                        throw e;
+                    }
+                    waitBeforeRetry(description, e, Math.max(e.getRemainingTime(), getRetryDelay(attempt)));
+                    continue;
+                }
+                try {
+                    request.execute(attempt);
+                    circuitBreaker.recordSuccess(trial);
+                    return;
+                } catch (IOException e) {
+                    if (isServerFailure(e)) {
+                        circuitBreaker.recordFailure(trial);
+                    } else if (e instanceof HttpResponseException) {
+                        circuitBreaker.recordSuccess(trial);
+                    } else {
+                        circuitBreaker.recordIgnored(trial);
+                    }
+                    if (attempt >= deployRetries || !isRetriable(e)) {
+                        throw e;
+                    }
+                    waitBeforeRetry(description, e, getRetryDelay(attempt));
+                } catch (RuntimeException e) {
+                    circuitBreaker.recordIgnored(trial);
+                    throw e;
+                }
+            }
+        }
+
+        private void waitBeforeRetry(String description, IOException e, long delay) throws IOException {
+            listener.getLogger().println("[JFROG] Failed to " + description + ": " + e.getMessage() +
+                    ", retrying in " + delay + " ms");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to retry the deployment", ie);
+            }
+        }
+
+        /**
+         * Uploads artifacts taken from a shared queue until it is drained, using clients of its own since the
+         * Artifactory clients are not thread safe.
+         */
+        private class DeployWorker implements Runnable {
+            private final Queue<Map.Entry<String, File>> pending;
+            private final ChecksumCache checksumCache;
+            private final List<DeployDetails> deployed;
+            private final Map<String, String> failures;
+
+            public DeployWorker(Queue<Map.Entry<String, File>> pending, ChecksumCache checksumCache,
+                    List<DeployDetails> deployed, Map<String, String> failures) {
+                this.pending = pending;
+                this.checksumCache = checksumCache;
+                this.deployed = deployed;
+                this.failures = failures;
+            }
+
+            public void run() {
+                ArtifactUploader uploader = new ArtifactUploader(server, credentials, proxyConfiguration);
+                ChecksumDeployer checksumDeployer = null;
+                if (checksumDeploy || deployRetries > 0) {
+                    checksumDeployer = new ChecksumDeployer(server, credentials, proxyConfiguration);
+                }
+                try {
+                    Map.Entry<String, File> artifact;
+                    while ((artifact = pending.poll()) != null) {
+                        String deploymentPath = getDeploymentPath(artifact.getKey());
+                        try {
+                            DeployDetails deployDetail = buildDeployDetails(artifact.getKey(), artifact.getValue(),
+                                    checksumCache);
+                            if (checksumDeploy && tryChecksumDeploy(checksumDeployer, deployDetail)) {
+                                listener.getLogger().println("[JFROG] Deployed artifact by checksum: " +
+                                        deploymentPath);
+                            } else {
+                                listener.getLogger().println("[JFROG] Deploying artifact: " + deploymentPath);
+                                upload(uploader, checksumDeployer, deployDetail, deploymentPath);
+                            }
+                            deployed.add(deployDetail);
+                        } catch (IOException e) {
+                            failures.put(deploymentPath, e.getMessage());
+                        } catch (RuntimeException e) {
+                            failures.put(deploymentPath, e.toString());
+                        }
+                    }
+                } finally {
+                    if (checksumDeployer != null) {
+                        checksumDeployer.shutdown();
+                    }
+                    uploader.shutdown();
+                }
+            }
+
+            /**
+             * Uploads the artifact. Before each retry the artifact is deployed by checksum, in case the failed attempt
+             * did upload its content.
+             */
+            private void upload(final ArtifactUploader uploader, final ChecksumDeployer checksumDeployer,
+                    final DeployDetails deployDetail, final String deploymentPath) throws IOException {
+                executeWithRetries("deploy " + deploymentPath, new RetriableRequest() {
+                    public void execute(int attempt) throws IOException {
+                        if (attempt > 0 && tryChecksumDeploy(checksumDeployer, deployDetail)) {
+                            listener.getLogger().println("[JFROG] Artifact already uploaded: " + deploymentPath);
+                        } else {
+                            uploader.upload(deployDetail, batchProperties ? null : buildProperties);
+                        }
+                    }
+                });
+            }
+
+            /**
+             * A failed checksum deployment is not fatal, the artifact is simply uploaded instead
+             */
+            private boolean tryChecksumDeploy(ChecksumDeployer checksumDeployer, DeployDetails deployDetail) {
+                if (!ChecksumDeployer.isApplicable(deployDetail)) {
+                    return false;
+                }
+                try {
+                    return checksumDeployer.tryDeploy(deployDetail, batchProperties ? null : buildProperties);
+                } catch (IOException e) {
+                    listener.getLogger().println("[JFROG] Checksum deployment of " + deployDetail.getArtifactPath() +
+                            " failed, uploading it instead: " + e.getMessage());
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Client errors, other than timeouts and throttling, would fail again
+     */
+    private static boolean isRetriable(IOException e) {
+        if (!(e instanceof HttpResponseException)) {
+            return true;
+        }
+        int status = ((HttpResponseException) e).getStatusCode();
+        return status >= 500 || status == 408 || status == 429;
+    }
+
+    /**
+     * @return True if the server could not be reached or failed with a server error, which counts against its
+     *         circuit breaker
+     */
+    private static boolean isServerFailure(IOException e) {
+        if (e instanceof HttpResponseException) {
+            return ((HttpResponseException) e).getStatusCode() >= 500;
+        }
+        return e instanceof SocketException || e instanceof UnknownHostException ||
+                e instanceof InterruptedIOException || e instanceof NoHttpResponseException;
+    }
+
+    /**
+     * Half of the exponential delay is always waited and the other half is random, so concurrent uploads failing
+     * together don't retry together
+     */
+    private static long getRetryDelay(int attempt) {
+        long delay = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << Math.min(attempt, 16));
+        return delay / 2 + (long) (Math.random() * (delay / 2));
+    }
+
+    private interface RetriableRequest {
+        /**
+         * @param attempt The number of attempts which already failed
+         */
+        void execute(int attempt) throws IOException;
+    }
+
+    private static class DeployDetailsComparator implements Comparator<DeployDetails> {
+
+        public int compare(DeployDetails o1, DeployDetails o2) {
+            int result = o1.getArtifactPath().compareTo(o2.getArtifactPath());
+            if (result == 0) {
+                result = o1.getFile().getPath().compareTo(o2.getFile().getPath());
+            }
             return result;
         }
     }
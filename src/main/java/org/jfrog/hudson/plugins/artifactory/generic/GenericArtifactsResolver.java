@@ -16,52 +16,305 @@
 
 package org.jfrog.hudson.plugins.artifactory.generic;
 
+import com.google.common.collect.Lists;
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.lang.StringUtils;
 import org.jfrog.build.api.Dependency;
 import org.jfrog.build.api.dependency.BuildDependency;
 import org.jfrog.build.api.util.Log;
+import org.jfrog.build.client.ProxyConfiguration;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
 import org.jfrog.build.extractor.clientConfiguration.util.BuildDependenciesHelper;
-import org.jfrog.build.extractor.clientConfiguration.util.DependenciesDownloader;
 import org.jfrog.build.extractor.clientConfiguration.util.DependenciesHelper;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
 import org.jfrog.hudson.plugins.artifactory.util.HudsonBuildInfoLog;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Resolves artifacts from Artifactory (published dependencies and build dependencies)
  * This class is used only in free style generic configurator.
+ * The resolve pattern is split once into the published and the build dependencies patterns, and when both exist they
+ * are resolved concurrently, each with its own clients.
+ * When resolving on the agent, the whole resolution runs on the node of the workspace, so the artifacts are
+ * downloaded by the node directly instead of through the master.
  *
  * @author Shay Yaakov
  */
 public class GenericArtifactsResolver {
-    private final AbstractBuild build;
-    private final ArtifactoryDependenciesClient client;
-    private String resolvePattern;
+    private final FilePath workspace;
+    private final BuildListener listener;
+    private final ArtifactoryServer server;
+    private final Credentials credentials;
+    private final ProxyConfiguration proxyConfiguration;
+    private final int resolveThreads;
+    private final boolean useNodeCache;
+    private final boolean resolveOnAgent;
+    private final boolean incrementalSync;
+    private String publishedDependenciesPattern;
+    private String buildDependenciesPattern;
     private Log log;
 
-    public GenericArtifactsResolver(AbstractBuild build, BuildListener listener, ArtifactoryDependenciesClient client,
-            String resolvePattern) throws IOException, InterruptedException {
-        this.build = build;
-        this.client = client;
-        this.resolvePattern = Util.replaceMacro(resolvePattern, build.getEnvironment(listener));
+    private List<Dependency> publishedDependencies = Collections.emptyList();
+    private List<BuildDependency> buildDependencies = Collections.emptyList();
+
+    /**
+     * @param resolveThreads Number of concurrent downloads, and so of clients, used by each kind of resolution
+     * @param useNodeCache   Whether to share the resolved artifacts with the other builds of the node
+     * @param resolveOnAgent Whether to search and download the artifacts from the node of the workspace
+     * @param incrementalSync Whether to delete the files resolved by the previous build which are no longer resolved
+     */
+    public GenericArtifactsResolver(AbstractBuild build, BuildListener listener, ArtifactoryServer server,
+            Credentials credentials, ProxyConfiguration proxyConfiguration, int resolveThreads, boolean useNodeCache,
+            boolean resolveOnAgent, boolean incrementalSync, String resolvePattern)
+            throws IOException, InterruptedException {
+        this.workspace = build.getWorkspace();
+        this.listener = listener;
+        this.server = server;
+        this.credentials = credentials;
+        this.proxyConfiguration = proxyConfiguration;
+        this.resolveThreads = resolveThreads;
+        this.useNodeCache = useNodeCache;
+        this.resolveOnAgent = resolveOnAgent;
+        this.incrementalSync = incrementalSync;
+        splitResolvePattern(Util.replaceMacro(resolvePattern, build.getEnvironment(listener)));
+        log = new HudsonBuildInfoLog(listener);
+    }
+
+    /**
+     * Resolver of the node side of an agent resolution, whose patterns were already split by the master
+     */
+    private GenericArtifactsResolver(FilePath workspace, BuildListener listener, ArtifactoryServer server,
+            Credentials credentials, ProxyConfiguration proxyConfiguration, int resolveThreads, boolean useNodeCache,
+            boolean incrementalSync, String publishedDependenciesPattern, String buildDependenciesPattern) {
+        this.workspace = workspace;
+        this.listener = listener;
+        this.server = server;
+        this.credentials = credentials;
+        this.proxyConfiguration = proxyConfiguration;
+        this.resolveThreads = resolveThreads;
+        this.useNodeCache = useNodeCache;
+        this.resolveOnAgent = false;
+        this.incrementalSync = incrementalSync;
+        this.publishedDependenciesPattern = publishedDependenciesPattern;
+        this.buildDependenciesPattern = buildDependenciesPattern;
         log = new HudsonBuildInfoLog(listener);
     }
 
-    public List<Dependency> retrievePublishedDependencies() throws IOException, InterruptedException {
-        DependenciesHelper helper = new DependenciesHelper(createDependenciesDownloader(), log);
-        return helper.retrievePublishedDependencies(resolvePattern);
+    public List<Dependency> getPublishedDependencies() {
+        return publishedDependencies;
+    }
+
+    public List<BuildDependency> getBuildDependencies() {
+        return buildDependencies;
+    }
+
+    /**
+     * Resolves both the published and the build dependencies. Unresolved files are removed only once both are done,
+     * so one resolution never removes files resolved by the other.
+     */
+    public void resolve() throws IOException, InterruptedException {
+        if (resolveOnAgent && workspace.isRemote()) {
+            AgentResolution resolution = workspace.act(new AgentResolutionCallable(listener, server, credentials,
+                    proxyConfiguration, resolveThreads, useNodeCache, incrementalSync, publishedDependenciesPattern,
+                    buildDependenciesPattern));
+            publishedDependencies = resolution.publishedDependencies;
+            buildDependencies = resolution.buildDependencies;
+            return;
+        }
+
+        ResolvedFiles resolvedFiles = new ResolvedFiles();
+        boolean resolvePublished = StringUtils.isNotBlank(publishedDependenciesPattern);
+        boolean resolveBuild = StringUtils.isNotBlank(buildDependenciesPattern);
+        if (resolvePublished && resolveBuild) {
+            resolveConcurrently(resolvedFiles);
+        } else if (resolvePublished) {
+            publishedDependencies = retrievePublishedDependencies(resolvedFiles);
+        } else if (resolveBuild) {
+            buildDependencies = retrieveBuildDependencies(resolvedFiles);
+        }
+
+        DependenciesDownloaderImpl.removeUnusedFiles(workspace, resolvedFiles.getAllResolvedFiles(),
+                resolvedFiles.getForDeletionFiles(), log);
+        if (incrementalSync) {
+            DependenciesDownloaderImpl.syncManifests(workspace, resolvedFiles.getResolvedChecksums(), log);
+        }
+    }
+
+    private void resolveConcurrently(final ResolvedFiles resolvedFiles) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<BuildDependency>> buildResolution = executor.submit(new Callable<List<BuildDependency>>() {
+                public List<BuildDependency> call() throws IOException, InterruptedException {
+                    return retrieveBuildDependencies(resolvedFiles);
+                }
+            });
+            publishedDependencies = retrievePublishedDependencies(resolvedFiles);
+            buildDependencies = buildResolution.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Build dependencies resolution failed: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Dependency> retrievePublishedDependencies(ResolvedFiles resolvedFiles)
+            throws IOException, InterruptedException {
+        List<ArtifactoryDependenciesClient> clients = createClients();
+        try {
+            DependenciesHelper helper = new DependenciesHelper(createDependenciesDownloader(clients, resolvedFiles),
+                    log);
+            return helper.retrievePublishedDependencies(publishedDependenciesPattern);
+        } finally {
+            shutdown(clients);
+        }
     }
 
-    public List<BuildDependency> retrieveBuildDependencies() throws IOException, InterruptedException {
-        BuildDependenciesHelper helper = new BuildDependenciesHelper(createDependenciesDownloader(), log);
-        return helper.retrieveBuildDependencies(resolvePattern);
+    private List<BuildDependency> retrieveBuildDependencies(ResolvedFiles resolvedFiles)
+            throws IOException, InterruptedException {
+        List<ArtifactoryDependenciesClient> clients = createClients();
+        try {
+            BuildDependenciesHelper helper = new BuildDependenciesHelper(
+                    createDependenciesDownloader(clients, resolvedFiles), log);
+            return helper.retrieveBuildDependencies(buildDependenciesPattern);
+        } finally {
+            shutdown(clients);
+        }
     }
 
-    private DependenciesDownloader createDependenciesDownloader() {
-        return new DependenciesDownloaderImpl(client, build.getWorkspace(), log);
+    /**
+     * Build dependencies are the pattern lines referencing a build, e.g. repo:path@build#number. A line may hold
+     * several comma separated references, so a line referencing a build which has commas is given to both
+     * resolutions, each of them ignoring the references of the other kind.
+     */
+    private void splitResolvePattern(String resolvePattern) {
+        StringBuilder published = new StringBuilder();
+        StringBuilder buildDependencies = new StringBuilder();
+        String[] lines = StringUtils.split(StringUtils.defaultString(resolvePattern), "\r\n");
+        for (String line : lines) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            if (line.contains("@")) {
+                buildDependencies.append(line).append("\n");
+                if (!line.contains(",")) {
+                    continue;
+                }
+            }
+            published.append(line).append("\n");
+        }
+        publishedDependenciesPattern = published.toString();
+        buildDependenciesPattern = buildDependencies.toString();
+    }
+
+    private List<ArtifactoryDependenciesClient> createClients() {
+        List<ArtifactoryDependenciesClient> clients = Lists.newArrayList();
+        // Range downloads write straight to the workspace, which they can do only when it is on this node
+        boolean rangeDownloads = RangeDownloadingClient.isEnabled() && !workspace.isRemote();
+        for (int i = 0; i < resolveThreads; i++) {
+            if (rangeDownloads) {
+                clients.add(new RangeDownloadingClient(server, credentials, proxyConfiguration, log));
+            } else {
+                clients.add(server.createArtifactoryDependenciesClient(credentials.getUsername(),
+                        credentials.getPassword(), proxyConfiguration, listener));
+            }
+        }
+        return clients;
+    }
+
+    private void shutdown(List<ArtifactoryDependenciesClient> clients) {
+        for (ArtifactoryDependenciesClient client : clients) {
+            client.shutdown();
+        }
+    }
+
+    private DependenciesDownloaderImpl createDependenciesDownloader(List<ArtifactoryDependenciesClient> clients,
+            ResolvedFiles resolvedFiles) {
+        return new DependenciesDownloaderImpl(clients, workspace, resolvedFiles, useNodeCache, incrementalSync, log);
+    }
+
+    /**
+     * Resolves the dependencies on the node of the workspace, with clients created there. The proxy configuration is
+     * not serializable and is passed by its fields.
+     */
+    private static class AgentResolutionCallable implements FilePath.FileCallable<AgentResolution> {
+        private final BuildListener listener;
+        private final ArtifactoryServer server;
+        private final Credentials credentials;
+        private final String proxyHost;
+        private final int proxyPort;
+        private final String proxyUsername;
+        private final String proxyPassword;
+        private final int resolveThreads;
+        private final boolean useNodeCache;
+        private final boolean incrementalSync;
+        private final String publishedDependenciesPattern;
+        private final String buildDependenciesPattern;
+
+        private AgentResolutionCallable(BuildListener listener, ArtifactoryServer server, Credentials credentials,
+                ProxyConfiguration proxyConfiguration, int resolveThreads, boolean useNodeCache,
+                boolean incrementalSync, String publishedDependenciesPattern, String buildDependenciesPattern) {
+            this.listener = listener;
+            this.server = server;
+            this.credentials = credentials;
+            this.proxyHost = proxyConfiguration != null ? proxyConfiguration.host : null;
+            this.proxyPort = proxyConfiguration != null ? proxyConfiguration.port : 0;
+            this.proxyUsername = proxyConfiguration != null ? proxyConfiguration.username : null;
+            this.proxyPassword = proxyConfiguration != null ? proxyConfiguration.password : null;
+            this.resolveThreads = resolveThreads;
+            this.useNodeCache = useNodeCache;
+            this.incrementalSync = incrementalSync;
+            this.publishedDependenciesPattern = publishedDependenciesPattern;
+            this.buildDependenciesPattern = buildDependenciesPattern;
+        }
+
+        public AgentResolution invoke(File workspace, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            ProxyConfiguration proxyConfiguration = null;
+            if (proxyHost != null) {
+                proxyConfiguration = new ProxyConfiguration();
+                proxyConfiguration.host = proxyHost;
+                proxyConfiguration.port = proxyPort;
+                proxyConfiguration.username = proxyUsername;
+                proxyConfiguration.password = proxyPassword;
+            }
+            GenericArtifactsResolver resolver = new GenericArtifactsResolver(new FilePath(workspace), listener, server,
+                    credentials, proxyConfiguration, resolveThreads, useNodeCache, incrementalSync,
+                    publishedDependenciesPattern, buildDependenciesPattern);
+            resolver.resolve();
+            return new AgentResolution(Lists.newArrayList(resolver.getPublishedDependencies()),
+                    Lists.newArrayList(resolver.getBuildDependencies()));
+        }
+    }
+
+    /**
+     * The dependencies resolved on the node, sent back to the master
+     */
+    private static class AgentResolution implements Serializable {
+        private final List<Dependency> publishedDependencies;
+        private final List<BuildDependency> buildDependencies;
+
+        private AgentResolution(List<Dependency> publishedDependencies, List<BuildDependency> buildDependencies) {
+            this.publishedDependencies = publishedDependencies;
+            this.buildDependencies = buildDependencies;
+        }
     }
 }
@@ -19,6 +19,7 @@ package org.jfrog.hudson.plugins.artifactory.generic;
 import com.google.common.collect.Lists;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.Hudson;
 import org.jfrog.build.api.Artifact;
 import org.jfrog.build.api.Build;
 import org.jfrog.build.api.BuildType;
@@ -27,6 +28,8 @@ import org.jfrog.build.api.builder.ModuleBuilder;
 import org.jfrog.build.api.dependency.BuildDependency;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.hudson.plugins.artifactory.AbstractBuildInfoDeployer;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
 import org.jfrog.hudson.plugins.artifactory.util.ExtractorUtils;
 
 import java.io.IOException;
@@ -42,24 +45,36 @@ public class GenericBuildInfoDeployer extends AbstractBuildInfoDeployer {
 
     private ArtifactoryGenericConfigurator configurator;
     private final AbstractBuild build;
+    private final Credentials credentials;
     private Build buildInfo;
 
     public GenericBuildInfoDeployer(ArtifactoryGenericConfigurator configurator, ArtifactoryBuildInfoClient client,
-            AbstractBuild build, BuildListener listener, List<Artifact> deployedArtifacts,
+            Credentials credentials, AbstractBuild build, BuildListener listener, List<Artifact> deployedArtifacts,
             List<BuildDependency> buildDependencies, List<Dependency> publishedDependencies)
             throws IOException, NoSuchAlgorithmException, InterruptedException {
         super(configurator, build, listener, client);
         this.configurator = configurator;
         this.build = build;
+        this.credentials = credentials;
         this.buildInfo = createBuildInfo("Generic", "Generic", BuildType.GENERIC);
         createDeployDetailsAndAddToBuildInfo(deployedArtifacts, publishedDependencies);
         buildInfo.setBuildDependencies(buildDependencies);
     }
 
+    /**
+     * The build info is serialized while being sent, so its JSON document is never held in memory
+     */
     public void deploy() throws IOException {
-        String url = configurator.getArtifactoryServer().getUrl() + "/api/build";
+        ArtifactoryServer server = configurator.getArtifactoryServer();
+        String url = server.getUrl() + "/api/build";
         listener.getLogger().println("[JFROG] Deploying build info to: " + url);
-        client.sendBuildInfo(buildInfo);
+        BuildInfoSender sender = new BuildInfoSender(server, credentials,
+                server.createProxyConfiguration(Hudson.getInstance().proxy));
+        try {
+            sender.send(buildInfo);
+        } finally {
+            sender.shutdown();
+        }
     }
 
     private void createDeployDetailsAndAddToBuildInfo(List<Artifact> deployedArtifacts,
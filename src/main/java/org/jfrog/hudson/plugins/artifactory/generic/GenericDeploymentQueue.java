@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Lists;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.StreamBuildListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.util.DaemonThreadFactory;
+import org.apache.commons.io.IOUtils;
+import org.jfrog.build.api.Dependency;
+import org.jfrog.build.api.dependency.BuildDependency;
+import org.jfrog.hudson.plugins.artifactory.action.ActionableHelper;
+import org.jfrog.hudson.plugins.artifactory.action.BuildInfoResultAction;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deploys the artifacts and build info of generic builds after they completed, so builds do not hold their executor
+ * while uploading. The artifacts are copied out of the workspace and the job configuration is captured when the
+ * deployment is queued, so the deployment is not affected by what happens to them afterwards. Deployments are started
+ * once the build is finalized, are done on the master by a pool of workers, and are saved so they are resumed after a
+ * restart. Only the build is saved, not the configuration and its credentials, so a resumed deployment uses the current
+ * configuration of the job. The next build of a job waits for the deployment of the previous one, so they are deployed
+ * in order.
+ */
+public class GenericDeploymentQueue {
+    private static final Logger log = Logger.getLogger(GenericDeploymentQueue.class.getName());
+
+    /**
+     * Number of deployments done concurrently
+     */
+    public static final int WORKERS = Integer.getInteger(GenericDeploymentQueue.class.getName() + ".workers", 2);
+
+    /**
+     * Number of deployments which may be pending, further builds deploy by themselves
+     */
+    public static final int CAPACITY = Integer.getInteger(GenericDeploymentQueue.class.getName() + ".capacity", 100);
+
+    /**
+     * Directory of the build in which the artifacts are staged until they are deployed
+     */
+    private static final String STAGING_DIR = "artifactory-deployment";
+
+    private static final GenericDeploymentQueue instance = new GenericDeploymentQueue();
+
+    private final List<PendingDeployment> pending = Lists.newArrayList();
+    private ThreadPoolExecutor executor;
+
+    public static GenericDeploymentQueue getInstance() {
+        return instance;
+    }
+
+    /**
+     * Stages the artifacts of the build and queues their deployment, which starts once the build is finalized
+     *
+     * @return True if the deployment was queued, false if the queue is full or the artifacts could not be staged, and
+     *         the build should deploy by itself
+     */
+    public boolean submit(AbstractBuild build, ArtifactoryGenericConfigurator configurator, BuildListener listener,
+            List<Dependency> publishedDependencies, List<BuildDependency> buildDependencies)
+            throws IOException, InterruptedException {
+        PendingDeployment deployment = new PendingDeployment(build.getParent().getFullName(), build.getNumber(),
+                configurator, publishedDependencies, buildDependencies);
+        synchronized (this) {
+            if (pending.size() >= CAPACITY) {
+                return false;
+            }
+            // Reserved before staging, so the next build doesn't start while the workspace is copied
+            pending.add(deployment);
+        }
+
+        FilePath stagingDir = getStagingDir(build);
+        boolean staged = false;
+        try {
+            stagingDir.deleteRecursive();
+            staged = configurator.stageArtifacts(build, listener, stagingDir);
+        } finally {
+            if (!staged) {
+                stagingDir.deleteRecursive();
+                complete(deployment);
+            }
+        }
+        if (!staged) {
+            return false;
+        }
+        synchronized (this) {
+            deployment.staged = true;
+            save();
+        }
+        return true;
+    }
+
+    /**
+     * @return True if a deployment of the job is queued or running
+     */
+    public synchronized boolean isPending(String projectName) {
+        for (PendingDeployment deployment : pending) {
+            if (deployment.projectName.equals(projectName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts the staged deployment of the build, if any
+     */
+    private synchronized void buildFinalized(AbstractBuild build) {
+        for (PendingDeployment deployment : pending) {
+            if (deployment.staged && !deployment.started &&
+                    deployment.projectName.equals(build.getParent().getFullName()) &&
+                    deployment.buildNumber == build.getNumber()) {
+                start(deployment);
+            }
+        }
+    }
+
+    private synchronized void start(final PendingDeployment deployment) {
+        deployment.started = true;
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    deploy(deployment);
+                } finally {
+                    complete(deployment);
+                }
+            }
+        });
+    }
+
+    private void deploy(PendingDeployment deployment) {
+        AbstractProject project = Hudson.getInstance().getItemByFullName(deployment.projectName,
+                AbstractProject.class);
+        AbstractBuild build = project != null ? (AbstractBuild) project.getBuildByNumber(deployment.buildNumber) : null;
+        if (build == null) {
+            log.warning("Dropping the deployment of " + deployment + ", the build no longer exists");
+            return;
+        }
+
+        BuildInfoResultAction action = build.getAction(BuildInfoResultAction.class);
+        FilePath stagingDir = getStagingDir(build);
+        ArtifactoryGenericConfigurator configurator = deployment.configurator;
+        if (configurator == null && project instanceof BuildableItemWithBuildWrappers) {
+            configurator = ActionableHelper.getBuildWrapper((BuildableItemWithBuildWrappers) project,
+                    ArtifactoryGenericConfigurator.class);
+        }
+        if (configurator == null) {
+            log.warning("Dropping the deployment of " + deployment + ", the job no longer deploys to Artifactory");
+            deleteStagingDir(stagingDir, deployment);
+            updateStatus(build, action, BuildInfoResultAction.DeploymentStatus.FAILED);
+            return;
+        }
+
+        updateStatus(build, action, BuildInfoResultAction.DeploymentStatus.DEPLOYING);
+        OutputStream logStream = null;
+        boolean deployed = false;
+        try {
+            // The build is finalized, so its console output is only appended to
+            logStream = new FileOutputStream(build.getLogFile(), true);
+            StreamBuildListener listener = new StreamBuildListener(logStream);
+            listener.getLogger().println("[JFROG] Deploying the artifacts of the completed build");
+            deployed = configurator.deployArtifacts(build, listener, stagingDir,
+                    deployment.publishedDependencies, deployment.buildDependencies);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not deploy " + deployment, e);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Could not deploy " + deployment, e);
+        } finally {
+            IOUtils.closeQuietly(logStream);
+            deleteStagingDir(stagingDir, deployment);
+            updateStatus(build, action, deployed ? BuildInfoResultAction.DeploymentStatus.DEPLOYED :
+                    BuildInfoResultAction.DeploymentStatus.FAILED);
+        }
+    }
+
+    private void deleteStagingDir(FilePath stagingDir, PendingDeployment deployment) {
+        try {
+            stagingDir.deleteRecursive();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not delete the staged artifacts of " + deployment, e);
+        }
+    }
+
+    private void updateStatus(AbstractBuild build, BuildInfoResultAction action,
+            BuildInfoResultAction.DeploymentStatus status) {
+        if (action == null) {
+            return;
+        }
+        action.setDeploymentStatus(status);
+        try {
+            build.save();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not save the deployment status of " + build, e);
+        }
+    }
+
+    private synchronized void complete(PendingDeployment deployment) {
+        pending.remove(deployment);
+        save();
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(WORKERS, WORKERS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+        }
+        return executor;
+    }
+
+    private synchronized void save() {
+        List<PendingDeployment> staged = Lists.newArrayList();
+        for (PendingDeployment deployment : pending) {
+            if (deployment.staged) {
+                staged.add(deployment);
+            }
+        }
+        try {
+            getQueueFile().write(staged);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not save the pending Artifactory deployments", e);
+        }
+    }
+
+    private static FilePath getStagingDir(AbstractBuild build) {
+        return new FilePath(new File(build.getRootDir(), STAGING_DIR));
+    }
+
+    private static XmlFile getQueueFile() {
+        return new XmlFile(Hudson.XSTREAM, new File(Hudson.getInstance().getRootDir(),
+                "artifactory-deployment-queue.xml"));
+    }
+
+    /**
+     * Resumes the deployments which were pending when Hudson stopped, their builds are no longer running
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    @SuppressWarnings({"unchecked"})
+    public static void resumePendingDeployments() throws IOException {
+        XmlFile queueFile = getQueueFile();
+        if (!queueFile.exists()) {
+            return;
+        }
+        List<PendingDeployment> deployments = (List<PendingDeployment>) queueFile.read();
+        GenericDeploymentQueue queue = getInstance();
+        synchronized (queue) {
+            for (PendingDeployment deployment : deployments) {
+                log.info("Resuming the deployment of " + deployment);
+                deployment.staged = true;
+                queue.pending.add(deployment);
+                queue.start(deployment);
+            }
+        }
+    }
+
+    /**
+     * A deployment as saved in the queue file
+     */
+    private static class PendingDeployment {
+        private final String projectName;
+        private final int buildNumber;
+        /**
+         * The job configuration when the build completed, not saved since it holds the deployer credentials
+         */
+        private final transient ArtifactoryGenericConfigurator configurator;
+        private final List<Dependency> publishedDependencies;
+        private final List<BuildDependency> buildDependencies;
+        private transient boolean staged;
+        private transient boolean started;
+
+        private PendingDeployment(String projectName, int buildNumber, ArtifactoryGenericConfigurator configurator,
+                List<Dependency> publishedDependencies, List<BuildDependency> buildDependencies) {
+            this.projectName = projectName;
+            this.buildNumber = buildNumber;
+            this.configurator = configurator;
+            this.publishedDependencies = publishedDependencies;
+            this.buildDependencies = buildDependencies;
+        }
+
+        @Override
+        public String toString() {
+            return projectName + " #" + buildNumber;
+        }
+    }
+
+    /**
+     * Starts the deployment of a build once it is finalized, when its console output is closed
+     */
+    @Extension
+    public static class DeploymentStarter extends RunListener<AbstractBuild> {
+
+        public DeploymentStarter() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onFinalized(AbstractBuild build) {
+            getInstance().buildFinalized(build);
+        }
+    }
+
+    /**
+     * Holds the next build of a job until the deployment of the previous one is done, so the builds of a job are
+     * deployed in order
+     */
+    @Extension
+    public static class PendingDeploymentDispatcher extends QueueTaskDispatcher {
+
+        @Override
+        public CauseOfBlockage canTake(Node node, Queue.Task task) {
+            if (task instanceof AbstractProject && getInstance().isPending(((AbstractProject) task).getFullName())) {
+                return new CauseOfBlockage() {
+                    @Override
+                    public String getShortDescription() {
+                        return "Waiting for the Artifactory deployment of the previous build";
+                    }
+                };
+            }
+            return null;
+        }
+    }
+}
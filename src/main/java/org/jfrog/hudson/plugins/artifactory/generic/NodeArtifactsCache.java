@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Content addressable store of resolved artifacts shared by all the builds running on a node. Artifacts are stored by
+ * their SHA1 checksum, so a file resolved by several jobs is downloaded only by the first of them. The store is
+ * bounded in size, least recently used artifacts are evicted first.
+ * Used only on the node itself, from within file callables.
+ */
+public class NodeArtifactsCache {
+
+    /**
+     * Maximum size of the cache in megabytes, set by a system property of the node JVM
+     */
+    public static final long MAX_SIZE_MB = Long.getLong(NodeArtifactsCache.class.getName() + ".maxSizeMb", 10240);
+
+    private final File cacheDir;
+
+    public NodeArtifactsCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Copies the cached artifact with the given checksum to the target file. The target is replaced only once the
+     * copy is complete.
+     *
+     * @return True if the artifact was found in the cache and copied
+     */
+    public boolean copyTo(String sha1, File target) throws IOException {
+        File cached = getCachedFile(sha1);
+        if (!cached.isFile()) {
+            return false;
+        }
+        // Mark the artifact as recently used
+        cached.setLastModified(System.currentTimeMillis());
+
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        // The artifact name may be shorter than the 3 characters required for a prefix
+        File tempFile = File.createTempFile(sha1, ".tmp", parent);
+        try {
+            FileUtils.copyFile(cached, tempFile);
+            replace(tempFile, target);
+        } finally {
+            tempFile.delete();
+        }
+        return true;
+    }
+
+    /**
+     * Adds a copy of the file to the cache, unless an artifact with the same checksum is already cached
+     */
+    public void add(String sha1, File file) throws IOException {
+        File cached = getCachedFile(sha1);
+        if (cached.exists()) {
+            cached.setLastModified(System.currentTimeMillis());
+            return;
+        }
+        File parent = cached.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tempFile = File.createTempFile(sha1, ".tmp", parent);
+        try {
+            FileUtils.copyFile(file, tempFile);
+            if (!cached.exists()) {
+                replace(tempFile, cached);
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used artifacts until the cache is within its maximum size
+     */
+    public void evict() {
+        List<CachedFile> cachedFiles = Lists.newArrayList();
+        long totalSize = 0;
+        File[] dirs = cacheDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                // Copies being added by other builds
+                if (file.getName().endsWith(".tmp")) {
+                    continue;
+                }
+                CachedFile cachedFile = new CachedFile(file);
+                cachedFiles.add(cachedFile);
+                totalSize += cachedFile.length;
+            }
+        }
+
+        long maxSize = MAX_SIZE_MB * 1024 * 1024;
+        if (totalSize <= maxSize) {
+            return;
+        }
+        Collections.sort(cachedFiles, new Comparator<CachedFile>() {
+            public int compare(CachedFile o1, CachedFile o2) {
+                long diff = o1.lastModified - o2.lastModified;
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (CachedFile cachedFile : cachedFiles) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            if (cachedFile.file.delete()) {
+                totalSize -= cachedFile.length;
+            }
+        }
+    }
+
+    /**
+     * The state of a cached file when the cache was listed, since other builds keep touching the files
+     */
+    private static class CachedFile {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+
+        private CachedFile(File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+
+    private File getCachedFile(String sha1) {
+        return new File(new File(cacheDir, sha1.substring(0, 2)), sha1);
+    }
+
+    private void replace(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            target.delete();
+            if (!source.renameTo(target)) {
+                throw new IOException("Could not replace " + target);
+            }
+        }
+    }
+}
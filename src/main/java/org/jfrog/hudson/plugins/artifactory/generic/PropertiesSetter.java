@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sets properties on deployed items with a single request per item. Properties set recursively on a folder are set on
+ * all the items under it as well.
+ * Not thread safe, each thread should use its own instance.
+ */
+public class PropertiesSetter extends ArtifactoryRestClient {
+
+    public PropertiesSetter(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    /**
+     * @param repositoryKey The repository of the item
+     * @param path          The path of the item in the repository, a file or a folder
+     * @param properties    Properties to set, replacing existing properties with the same keys
+     * @param recursive     Set the properties on all the items under a folder
+     */
+    public void setProperties(String repositoryKey, String path, Map<String, String> properties, boolean recursive)
+            throws IOException {
+        StringBuilder url = new StringBuilder(server.getUrl()).append("/api/storage/").append(repositoryKey);
+        appendPath(url, path);
+        url.append("?properties=").append(URLEncoder.encode(formatProperties(properties), "UTF-8"))
+                .append("&recursive=").append(recursive ? 1 : 0);
+
+        int status = execute(new HttpPut(url.toString()));
+        if (status != HttpStatus.SC_NO_CONTENT && status != HttpStatus.SC_OK) {
+            throw new HttpResponseException(status, "Failed to set properties on " + repositoryKey + "/" + path +
+                    ": HTTP response code: " + status);
+        }
+    }
+
+    /**
+     * @param repositoryKey The repository of the folder
+     * @param folder        The path of the folder in the repository
+     * @return The paths in the repository of all the files under the folder, at any depth
+     */
+    public Set<String> listFiles(String repositoryKey, String folder) throws IOException {
+        StringBuilder url = new StringBuilder(server.getUrl()).append("/api/storage/").append(repositoryKey);
+        appendPath(url, folder);
+        url.append("?list&deep=1");
+
+        HttpResponse response = executeRequest(new HttpGet(url.toString()));
+        HttpEntity entity = response.getEntity();
+        int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_OK) {
+            if (entity != null) {
+                entity.consumeContent();
+            }
+            throw new HttpResponseException(status, "Failed to list the files of " + repositoryKey + "/" + folder +
+                    ": HTTP response code: " + status);
+        }
+
+        InputStream content = entity.getContent();
+        try {
+            Set<String> files = Sets.newHashSet();
+            for (JsonNode file : new ObjectMapper().readTree(content).path("files")) {
+                if (!file.path("folder").getBooleanValue()) {
+                    files.add(folder + "/" + StringUtils.removeStart(file.path("uri").getTextValue(), "/"));
+                }
+            }
+            return files;
+        } finally {
+            Closeables.closeQuietly(content);
+        }
+    }
+
+    /**
+     * Properties are separated by '|', so the separators are escaped in the values
+     */
+    private String formatProperties(Map<String, String> properties) {
+        StringBuilder formatted = new StringBuilder();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            if (formatted.length() > 0) {
+                formatted.append("|");
+            }
+            formatted.append(escape(property.getKey())).append("=").append(escape(property.getValue()));
+        }
+        return formatted.toString();
+    }
+
+    private String escape(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '\\' || c == '|' || c == '=' || c == ',') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.io.Closeables;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Downloads byte ranges of an artifact, written at their position in a file.
+ * Not thread safe, each downloading thread should use its own instance.
+ */
+public class RangeDownloader extends ArtifactoryRestClient {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    public RangeDownloader(ArtifactoryServer server, Credentials credentials, ProxyConfiguration proxyConfiguration) {
+        super(server, credentials, proxyConfiguration);
+    }
+
+    /**
+     * Downloads the bytes from the first to the last position, inclusive, and writes them at the same positions of
+     * the file
+     */
+    public void downloadRange(String artifactUrl, long first, long last, FileChannel channel) throws IOException {
+        HttpGet get = new HttpGet(artifactUrl);
+        get.setHeader("Range", "bytes=" + first + "-" + last);
+        HttpResponse response = executeRequest(get);
+        HttpEntity entity = response.getEntity();
+        int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+            if (entity != null) {
+                entity.consumeContent();
+            }
+            throw new HttpResponseException(status, "Failed to download bytes " + first + "-" + last + " of " +
+                    artifactUrl + ", response code: " + status);
+        }
+
+        InputStream content = entity.getContent();
+        try {
+            long position = first;
+            int read;
+            while (position <= last && (read = content.read(buffer, 0,
+                    (int) Math.min(buffer.length, last - position + 1))) != -1) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+            }
+            if (position <= last) {
+                throw new IOException("Download of bytes " + first + "-" + last + " of " + artifactUrl +
+                        " ended at byte " + position);
+            }
+        } finally {
+            // Aborts the connection if the server sent more than requested
+            Closeables.closeQuietly(content);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.InputStreamEntity;
+import org.jfrog.build.api.util.Log;
+import org.jfrog.build.client.ProxyConfiguration;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
+import org.jfrog.hudson.plugins.artifactory.config.ArtifactoryServer;
+import org.jfrog.hudson.plugins.artifactory.config.Credentials;
+import org.jfrog.hudson.plugins.artifactory.util.ChecksumCalculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dependencies client downloading large artifacts with concurrent HTTP range requests instead of a single stream.
+ * Range downloads are disabled unless a minimal artifact size is set. The artifact is requested as usual, and when the
+ * response headers show a large artifact whose server accepts range requests, the response content becomes a
+ * {@link RangeDownload}: the first chunk is read from the response, and the other chunks are downloaded straight into
+ * the target file with range requests. Read as a plain stream, it is the response content.
+ * Not thread safe, like the client it extends.
+ */
+public class RangeDownloadingClient extends ArtifactoryDependenciesClient {
+
+    /**
+     * Artifacts smaller than this are downloaded in a single stream, 0 disables range downloads
+     */
+    public static final long MIN_FILE_SIZE = Long.getLong(RangeDownloadingClient.class.getName() + ".minFileSizeMb",
+            0) * 1024 * 1024;
+
+    /**
+     * Number of concurrent requests of each artifact, the regular request included
+     */
+    public static final int THREADS = Integer.getInteger(RangeDownloadingClient.class.getName() + ".threads", 4);
+
+    /**
+     * Size of each range, which is also what a failed request downloads again
+     */
+    public static final long CHUNK_SIZE = Long.getLong(RangeDownloadingClient.class.getName() + ".chunkSizeMb",
+            32) * 1024 * 1024;
+
+    /**
+     * Number of times the download of a range is retried
+     */
+    private static final int CHUNK_RETRIES = 3;
+
+    private final ArtifactoryServer server;
+    private final Credentials credentials;
+    private final ProxyConfiguration proxyConfiguration;
+    private final Log log;
+    /**
+     * Downloaders of the range requests, created on the first range download and reused by the next ones
+     */
+    private final List<RangeDownloader> downloaders = Lists.newArrayList();
+
+    public RangeDownloadingClient(ArtifactoryServer server, Credentials credentials,
+            ProxyConfiguration proxyConfiguration, Log log) {
+        super(server.getUrl(), credentials.getUsername(), credentials.getPassword(), log);
+        this.server = server;
+        this.credentials = credentials;
+        this.proxyConfiguration = proxyConfiguration;
+        this.log = log;
+        setConnectionTimeout(server.getTimeout());
+        if (!server.isBypassProxy() && proxyConfiguration != null) {
+            setProxyConfiguration(proxyConfiguration.host, proxyConfiguration.port, proxyConfiguration.username,
+                    proxyConfiguration.password);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return MIN_FILE_SIZE > 0 && THREADS > 1;
+    }
+
+    /**
+     * The response content of large artifacts whose server accepts range requests and reports their SHA1 is a
+     * {@link RangeDownload}
+     */
+    @Override
+    public HttpResponse downloadArtifact(String artifactUrl) throws IOException {
+        HttpResponse response = super.downloadArtifact(artifactUrl);
+        long length = getContentLength(response);
+        Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+        Header sha1 = response.getFirstHeader("X-Checksum-Sha1");
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || response.getEntity() == null ||
+                length < MIN_FILE_SIZE || acceptRanges == null || !"bytes".equalsIgnoreCase(acceptRanges.getValue()) ||
+                sha1 == null || StringUtils.isBlank(sha1.getValue())) {
+            return response;
+        }
+
+        RangeDownload download = new RangeDownload(artifactUrl, length, sha1.getValue(),
+                response.getEntity().getContent());
+        response.setEntity(new InputStreamEntity(download, length));
+        return response;
+    }
+
+    @Override
+    public void shutdown() {
+        for (RangeDownloader downloader : downloaders) {
+            downloader.shutdown();
+        }
+        downloaders.clear();
+        super.shutdown();
+    }
+
+    private List<RangeDownloader> getDownloaders(int count) {
+        while (downloaders.size() < count) {
+            downloaders.add(new RangeDownloader(server, credentials, proxyConfiguration));
+        }
+        return downloaders.subList(0, count);
+    }
+
+    private static long getContentLength(HttpResponse response) {
+        Header contentLength = response.getFirstHeader("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.getValue().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A large artifact whose response content was not read yet
+     */
+    public class RangeDownload extends InputStream {
+        private final String artifactUrl;
+        private final long length;
+        private final String sha1;
+        private final InputStream content;
+
+        private RangeDownload(String artifactUrl, long length, String sha1, InputStream content) {
+            this.artifactUrl = artifactUrl;
+            this.length = length;
+            this.sha1 = sha1;
+            this.content = content;
+        }
+
+        /**
+         * Downloads the artifact into the file, preallocated to the artifact size. The first chunk is read from the
+         * response content while the others are downloaded with concurrent range requests, each retried on its own.
+         * The file is deleted if the download fails or its SHA1 checksum doesn't match the one reported by the
+         * server.
+         *
+         * @return The checksums of the downloaded file keyed by "md5" and "sha1"
+         */
+        public Map<String, String> downloadTo(File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            int threads = (int) Math.min(THREADS, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            log.info("Downloading " + artifactUrl + " (" + length + " bytes) using " + threads + " requests");
+
+            boolean downloaded = false;
+            try {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                try {
+                    randomAccessFile.setLength(length);
+                    downloadChunks(randomAccessFile.getChannel(), threads);
+                } finally {
+                    randomAccessFile.close();
+                }
+
+                Map<String, String> calculated = ChecksumCalculator.calculateChecksums(file, ChecksumCalculator.MD5,
+                        ChecksumCalculator.SHA1);
+                if (!sha1.equalsIgnoreCase(calculated.get(ChecksumCalculator.SHA1))) {
+                    throw new IOException("SHA1 checksum of the downloaded " + artifactUrl + " is " +
+                            calculated.get(ChecksumCalculator.SHA1) + " instead of " + sha1);
+                }
+                Map<String, String> checksums = Maps.newHashMap();
+                checksums.put("md5", calculated.get(ChecksumCalculator.MD5));
+                checksums.put("sha1", calculated.get(ChecksumCalculator.SHA1));
+                downloaded = true;
+                return checksums;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Could not find checksum algorithm: " + e.getMessage(), e);
+            } finally {
+                if (!downloaded) {
+                    file.delete();
+                }
+            }
+        }
+
+        /**
+         * The calling thread reads the first chunk from the response content, while each of the other threads uses
+         * a range downloader of the client and takes the next chunk to download once done with the previous one
+         */
+        private void downloadChunks(final FileChannel channel, int threads) throws IOException {
+            final AtomicLong nextChunk = new AtomicLong(1);
+            final long chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            List<RangeDownloader> rangeDownloaders = getDownloaders(threads - 1);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads - 1));
+            try {
+                List<Future<Void>> downloads = Lists.newArrayList();
+                for (final RangeDownloader downloader : rangeDownloaders) {
+                    downloads.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws IOException, InterruptedException {
+                            long chunk;
+                            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                                long first = chunk * CHUNK_SIZE;
+                                long last = Math.min(first + CHUNK_SIZE, length) - 1;
+                                downloadChunk(downloader, first, last, channel);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                long firstChunkEnd = Math.min(CHUNK_SIZE, length) - 1;
+                long firstChunkRead = readFirstChunk(channel, firstChunkEnd);
+                for (Future<Void> download : downloads) {
+                    download.get();
+                }
+                if (firstChunkRead <= firstChunkEnd) {
+                    // The range downloaders are free once the other chunks are downloaded
+                    downloadChunk(getDownloaders(1).get(0), firstChunkRead, firstChunkEnd, channel);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while downloading " + artifactUrl, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Download of " + artifactUrl + " failed: " + cause.getMessage(), cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Reads the first chunk from the response content, then drops the connection instead of reading the rest of
+         * the artifact
+         *
+         * @return The position up to which the chunk was read, the rest should be downloaded with a range request
+         */
+        private long readFirstChunk(FileChannel channel, long last) {
+            long position = 0;
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while (position <= last && (read = content.read(buffer, 0,
+                        (int) Math.min(buffer.length, last - position + 1))) != -1) {
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        position += channel.write(bytes, position);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Download of bytes 0-" + last + " of " + artifactUrl + " failed (" + e.getMessage() +
+                        "), retrying");
+            } finally {
+                abort();
+            }
+            return position;
+        }
+
+        private void downloadChunk(RangeDownloader downloader, long first, long last, FileChannel channel)
+                throws IOException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    downloader.downloadRange(artifactUrl, first, last, channel);
+                    return;
+                } catch (IOException e) {
+                    if (attempt >= CHUNK_RETRIES) {
+                        throw e;
+                    }
+                    log.warn("Download of bytes " + first + "-" + last + " of " + artifactUrl + " failed (" +
+                            e.getMessage() + "), retrying");
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(1 << attempt));
+                }
+            }
+        }
+
+        /**
+         * Closing the content would read the rest of the artifact to reuse the connection
+         */
+        private void abort() {
+            if (content instanceof ConnectionReleaseTrigger) {
+                try {
+                    ((ConnectionReleaseTrigger) content).abortConnection();
+                } catch (IOException e) {
+                    log.debug("Could not abort the download of " + artifactUrl + ": " + e.getMessage());
+                }
+            } else {
+                Closeables.closeQuietly(content);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return content.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return content.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The files resolved into a directory by the last resolution of a workspace, with their checksums and the size and
+ * modification time they had once resolved. A file which wasn't modified since is known to have the same checksums,
+ * and a file missing from the next resolution is known to be stale.
+ * Used only on the node itself, from within file callables.
+ */
+public class ResolutionManifest {
+
+    private static final String DIRECTORY_KEY = "directory";
+    private static final String FILE_KEY_PREFIX = "file.";
+
+    private final File directory;
+    private final Map<String, Entry> entries;
+
+    public ResolutionManifest(File directory, Map<String, Entry> entries) {
+        this.directory = directory;
+        this.entries = entries;
+    }
+
+    /**
+     * @param manifestsDir Directory of the manifests of a workspace
+     * @param directory    The resolution target directory
+     * @return The manifest file of the directory
+     */
+    public static File getManifestFile(File manifestsDir, File directory) {
+        return new File(manifestsDir, DigestUtils.shaHex(directory.getAbsolutePath()) + ".properties");
+    }
+
+    /**
+     * @return The manifest stored in the file, null if there is none or it can't be read
+     */
+    public static ResolutionManifest load(File manifestFile) {
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(manifestFile);
+            properties.load(stream);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            Closeables.closeQuietly(stream);
+        }
+
+        String directory = properties.getProperty(DIRECTORY_KEY);
+        if (directory == null) {
+            return null;
+        }
+        Map<String, Entry> entries = Maps.newHashMap();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(FILE_KEY_PREFIX)) {
+                Entry entry = Entry.parse(properties.getProperty(key));
+                if (entry != null) {
+                    entries.put(key.substring(FILE_KEY_PREFIX.length()), entry);
+                }
+            }
+        }
+        return new ResolutionManifest(new File(directory), entries);
+    }
+
+    /**
+     * Writes the manifest to the file, which is replaced only once completely written
+     */
+    public void save(File manifestFile) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(DIRECTORY_KEY, directory.getAbsolutePath());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(FILE_KEY_PREFIX + entry.getKey(), entry.getValue().toString());
+        }
+
+        File parent = manifestFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tempFile = File.createTempFile(manifestFile.getName(), ".tmp", parent);
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try {
+            properties.store(stream, "Artifactory plugin resolution manifest");
+        } finally {
+            Closeables.closeQuietly(stream);
+        }
+        if (!tempFile.renameTo(manifestFile)) {
+            manifestFile.delete();
+            if (!tempFile.renameTo(manifestFile)) {
+                tempFile.delete();
+                throw new IOException("Could not replace resolution manifest " + manifestFile);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The entries keyed by the file names
+     */
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final String md5;
+        private final String sha1;
+
+        public Entry(long length, long lastModified, String md5, String sha1) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.md5 = md5;
+            this.sha1 = sha1;
+        }
+
+        /**
+         * @return The entry of the file as it is now
+         */
+        public static Entry of(File file, String md5, String sha1) {
+            return new Entry(file.length(), file.lastModified(), md5, sha1);
+        }
+
+        /**
+         * @return True if the file wasn't modified since the entry was recorded
+         */
+        public boolean matches(File file) {
+            return file.isFile() && file.length() == length && file.lastModified() == lastModified;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public String getSha1() {
+            return sha1;
+        }
+
+        private static Entry parse(String value) {
+            String[] split = StringUtils.split(value, ',');
+            if (split == null || split.length != 4) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(split[0]), Long.parseLong(split[1]), split[2], split[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return length + "," + lastModified + "," + md5 + "," + sha1;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.generic;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Files resolved by several concurrent resolutions into the same workspace. Lets a resolution skip the files another
+ * one already handles, and collects the unresolved files each of them would remove, so they can be removed once all
+ * the resolutions are done without removing files resolved by another one.
+ */
+public class ResolvedFiles {
+
+    private final ConcurrentMap<String, String> claimedFiles = Maps.newConcurrentMap();
+    private final Set<String> allResolvedFiles = Collections.synchronizedSet(Sets.<String>newHashSet());
+    private final Set<String> forDeletionFiles = Collections.synchronizedSet(Sets.<String>newHashSet());
+    private final ConcurrentMap<String, Map<String, String>> resolvedChecksums = Maps.newConcurrentMap();
+
+    /**
+     * Claims the resolution of a file.
+     *
+     * @param path Local path of the file
+     * @param sha1 Checksum of the resolved content
+     * @return False if another resolution already claimed the same content for this file
+     */
+    public boolean claim(String path, String sha1) {
+        String checksum = StringUtils.defaultString(sha1);
+        String claimed = claimedFiles.putIfAbsent(path, checksum);
+        return claimed == null || !claimed.equals(checksum);
+    }
+
+    /**
+     * Records the checksums of a file found or downloaded by a resolution
+     */
+    public void recordResolved(String path, String md5, String sha1) {
+        Map<String, String> checksums = Maps.newHashMap();
+        checksums.put("md5", md5);
+        checksums.put("sha1", sha1);
+        resolvedChecksums.put(path, checksums);
+    }
+
+    /**
+     * @return The checksums of the recorded files keyed by their paths
+     */
+    public Map<String, Map<String, String>> getResolvedChecksums() {
+        return Maps.newHashMap(resolvedChecksums);
+    }
+
+    public void deferRemoval(Set<String> allResolvesFiles, Set<String> forDeletionFiles) {
+        this.allResolvedFiles.addAll(allResolvesFiles);
+        this.forDeletionFiles.addAll(forDeletionFiles);
+    }
+
+    public Set<String> getAllResolvedFiles() {
+        synchronized (allResolvedFiles) {
+            return Sets.newHashSet(allResolvedFiles);
+        }
+    }
+
+    public Set<String> getForDeletionFiles() {
+        synchronized (forDeletionFiles) {
+            return Sets.newHashSet(forDeletionFiles);
+        }
+    }
+}
@@ -19,11 +19,9 @@ package org.jfrog.hudson.plugins.artifactory.gradle;
 import com.google.common.base.Charsets;
 import hudson.FilePath;
 import hudson.model.AbstractBuild;
-import hudson.remoting.Which;
 import org.apache.commons.io.IOUtils;
 import org.jfrog.hudson.plugins.artifactory.util.PluginDependencyHelper;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -55,8 +53,7 @@ public class GradleInitScriptWriter {
         StringBuilder initScript = new StringBuilder();
         InputStream templateStream = getClass().getResourceAsStream("/initscripttemplate.gradle");
         String templateAsString = IOUtils.toString(templateStream, Charsets.UTF_8.name());
-        File localGradleExtractorJar = Which.jarFile(getClass().getResource("/initscripttemplate.gradle"));
-        FilePath dependencyDir = PluginDependencyHelper.getActualDependencyDirectory(build, localGradleExtractorJar);
+        FilePath dependencyDir = PluginDependencyHelper.getActualDependencyDirectory(build);
         String absoluteDependencyDirPath = dependencyDir.getRemote();
         absoluteDependencyDirPath = absoluteDependencyDirPath.replace("\\", "/");
         String str = templateAsString.replace("${pluginLibDir}", absoluteDependencyDirPath);
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.maven3extractor;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Files the Maven extractor bootstraps Maven with, written once to each node under the workspaces root and shared by
+ * all the builds of the node. Each file is kept in a directory named after the checksum of its content, so files of
+ * different plugin versions never replace each other. The existence of the file is checked on the node on each use,
+ * since it may be deleted while the node stays connected, for example when the workspaces are wiped.
+ */
+public class ExtractorBootstrapFiles {
+
+    private static final String BOOTSTRAP_PATH = "artifactory-plugin/bootstrap";
+    private static final String RESOURCES_PATH = "org/jfrog/hudson/plugins/artifactory/maven3extractor/";
+
+    private static final ConcurrentMap<String, BootstrapFile> files = Maps.newConcurrentMap();
+
+    private ExtractorBootstrapFiles() {
+        // utility class
+        throw new IllegalAccessError();
+    }
+
+    /**
+     * @param workspace      A workspace of the node
+     * @param sourceFile     Name of the file in the plugin resources
+     * @param targetFileName Name of the file on the node
+     * @return The file on the node, written if it isn't there yet
+     */
+    public static FilePath getBootstrapFile(FilePath workspace, String sourceFile, String targetFileName)
+            throws IOException, InterruptedException {
+        BootstrapFile file = getFile(sourceFile);
+        FilePath root = workspace.getParent() != null ? workspace.getParent() : workspace;
+        FilePath target = new FilePath(root, BOOTSTRAP_PATH + "/" + file.sha1 + "/" + targetFileName);
+        target.act(new WriteFileCallable(file.content));
+        return target;
+    }
+
+    private static BootstrapFile getFile(String sourceFile) throws IOException {
+        BootstrapFile file = files.get(sourceFile);
+        if (file == null) {
+            URL resource = ExtractorBootstrapFiles.class.getClassLoader().getResource(RESOURCES_PATH + sourceFile);
+            if (resource == null) {
+                throw new IllegalStateException(sourceFile + " file not found");
+            }
+            InputStream stream = resource.openStream();
+            try {
+                file = new BootstrapFile(IOUtils.toByteArray(stream));
+            } finally {
+                Closeables.closeQuietly(stream);
+            }
+            files.putIfAbsent(sourceFile, file);
+        }
+        return file;
+    }
+
+    private static class BootstrapFile {
+        private final byte[] content;
+        private final String sha1;
+
+        private BootstrapFile(byte[] content) {
+            this.content = content;
+            this.sha1 = DigestUtils.shaHex(content);
+        }
+    }
+
+    /**
+     * Writes the file unless it already exists. The content is written to a temporary file first, so builds running
+     * concurrently never see a partially written file.
+     */
+    private static class WriteFileCallable implements FilePath.FileCallable<Void> {
+        private final byte[] content;
+
+        private WriteFileCallable(byte[] content) {
+            this.content = content;
+        }
+
+        public Void invoke(File f, VirtualChannel channel) throws IOException {
+            if (f.isFile() && f.length() == content.length) {
+                return null;
+            }
+            File parent = f.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            File tempFile = File.createTempFile(f.getName(), ".tmp", parent);
+            FileOutputStream stream = new FileOutputStream(tempFile);
+            try {
+                stream.write(content);
+            } finally {
+                Closeables.closeQuietly(stream);
+            }
+            if (!tempFile.renameTo(f)) {
+                tempFile.delete();
+                if (!f.isFile()) {
+                    throw new IOException("Could not write " + f);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Environment;
 import hudson.model.Result;
-import hudson.remoting.Which;
 import hudson.scm.NullChangeLogParser;
 import hudson.scm.NullSCM;
 import hudson.tasks.Builder;
@@ -31,7 +30,6 @@ import org.hudsonci.maven.plugin.builder.MavenBuilder;
 import org.hudsonci.maven.plugin.builder.internal.MavenInstallationValidator;
 import org.jfrog.build.api.BuildInfoConfigProperties;
 import org.jfrog.build.extractor.clientConfiguration.ArtifactoryClientConfiguration;
-import org.jfrog.build.extractor.maven.BuildInfoRecorder;
 import org.jfrog.hudson.plugins.artifactory.action.ActionableHelper;
 import org.jfrog.hudson.plugins.artifactory.action.BuildInfoResultAction;
 import org.jfrog.hudson.plugins.artifactory.config.Credentials;
@@ -41,7 +39,6 @@ import org.jfrog.hudson.plugins.artifactory.util.*;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -213,15 +210,9 @@ public class MavenExtractorEnvironment extends Environment {
     }
 
     private FilePath copyFile(String sourceFile, String targetFilename, String targetExt) {
-        URL resource = getClass().getClassLoader().getResource(
-                "org/jfrog/hudson/plugins/artifactory/maven3extractor/" + sourceFile);
-        if (resource == null) {
-            throw new IllegalStateException(sourceFile + " file not found");
-        }
         try {
-            FilePath remoteClassworlds = build.getWorkspace().createTextTempFile(targetFilename, targetExt, "", false);
-            remoteClassworlds.copyFrom(resource);
-            return remoteClassworlds;
+            return ExtractorBootstrapFiles.getBootstrapFile(build.getWorkspace(), sourceFile,
+                    targetFilename + targetExt);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -247,11 +238,7 @@ public class MavenExtractorEnvironment extends Environment {
             }
         }
 
-        /*
-        if (classworldsConf != null) {
-            classworldsConf.delete();
-        }
-        */
+        // The bootstrap files are shared by all the builds of the node and are not deleted
 
         Result result = build.getResult();
         if (wrapper.isDeployBuildInfo() && result != null && result.isBetterOrEqualTo(Result.SUCCESS)) {
@@ -285,10 +272,8 @@ public class MavenExtractorEnvironment extends Environment {
             mavenOpts.append(originalOpts);
         }
 
-        File maven3ExtractorJar = Which.jarFile(BuildInfoRecorder.class);
         try {
-            FilePath actualDependencyDirectory =
-                    PluginDependencyHelper.getActualDependencyDirectory(build, maven3ExtractorJar);
+            FilePath actualDependencyDirectory = PluginDependencyHelper.getActualDependencyDirectory(build);
             mavenOpts.append(" ").append(MAVEN_PLUGIN_OPTS).append("=")
                     .append(quote(actualDependencyDirectory.getRemote())).append(" -D").append(
                     CLASSWORLDS_CONF_KEY).append("=").append(classworldsConf.getRemote());
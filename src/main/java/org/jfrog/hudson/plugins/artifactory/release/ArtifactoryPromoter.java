@@ -43,7 +43,7 @@ public class ArtifactoryPromoter {
     public boolean handlePromotion(TaskListener listener) throws IOException {
         ArtifactoryBuildInfoClient client = null;
         try {
-            client = artifactoryServer.createArtifactoryClient(deployer.getUsername(), deployer.getPassword(),
+            client = artifactoryServer.acquireArtifactoryClient(deployer.getUsername(), deployer.getPassword(),
                     artifactoryServer.createProxyConfiguration(Hudson.getInstance().proxy));
 
             if (promotionPlugin != null && !UserPluginInfo.NO_PLUGIN_KEY.equals(promotionPlugin.getPluginName())) {
@@ -53,7 +53,7 @@ public class ArtifactoryPromoter {
             }
         } finally {
             if (client != null) {
-                client.shutdown();
+                artifactoryServer.releaseArtifactoryClient(client);
             }
         }
     }
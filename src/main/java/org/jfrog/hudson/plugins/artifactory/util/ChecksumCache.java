@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe cache of file checksums. A cached entry is used only as long as the size and last modification time of
+ * the file didn't change, otherwise the checksums are calculated again.
+ * A cache may be backed by a file, in which case it is shared by everyone in the same JVM using that file and can be
+ * saved to be reused after a restart.
+ */
+public class ChecksumCache {
+
+    /**
+     * Maximum number of entries kept when a cache is saved, the entries of the least recently modified files are
+     * dropped first
+     */
+    public static final int MAX_ENTRIES = Integer.getInteger(ChecksumCache.class.getName() + ".maxEntries", 100000);
+
+    private static final Map<String, ChecksumCache> persistentCaches = Maps.newHashMap();
+
+    private final ConcurrentMap<String, CachedChecksums> checksums = Maps.newConcurrentMap();
+    private final File cacheFile;
+
+    public ChecksumCache() {
+        this(null);
+    }
+
+    private ChecksumCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @param cacheFile The file backing the cache
+     * @return The cache backed by the given file, loaded from it on first use
+     */
+    public static ChecksumCache getPersistentCache(File cacheFile) throws IOException {
+        synchronized (persistentCaches) {
+            String key = cacheFile.getAbsolutePath();
+            ChecksumCache cache = persistentCaches.get(key);
+            if (cache == null) {
+                cache = new ChecksumCache(cacheFile);
+                cache.load();
+                persistentCaches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return The MD5 and SHA1 checksums of the file keyed by the {@link ChecksumCalculator} algorithm names
+     */
+    public Map<String, String> getChecksums(File file) throws IOException, NoSuchAlgorithmException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        CachedChecksums cached = checksums.get(path);
+        if (cached != null && cached.matches(length, lastModified)) {
+            return cached.checksums;
+        }
+
+        Map<String, String> calculated = Collections.unmodifiableMap(
+                ChecksumCalculator.calculateChecksums(file, ChecksumCalculator.MD5, ChecksumCalculator.SHA1));
+        checksums.put(path, new CachedChecksums(length, lastModified, calculated));
+        return calculated;
+    }
+
+    /**
+     * @return The cached checksums of the file if it wasn't modified since they were calculated, null otherwise. The
+     *         file is never read.
+     */
+    public Map<String, String> getCachedChecksums(File file) {
+        CachedChecksums cached = checksums.get(file.getAbsolutePath());
+        if (cached != null && cached.matches(file.length(), file.lastModified())) {
+            return cached.checksums;
+        }
+        return null;
+    }
+
+    /**
+     * Records the known checksums of a file, saving the need to read it
+     */
+    public void put(File file, String md5, String sha1) {
+        Map<String, String> known = Maps.newHashMap();
+        known.put(ChecksumCalculator.MD5, md5);
+        known.put(ChecksumCalculator.SHA1, sha1);
+        checksums.put(file.getAbsolutePath(), new CachedChecksums(file.length(), file.lastModified(),
+                Collections.unmodifiableMap(known)));
+    }
+
+    /**
+     * Writes the cache to its backing file. The file is replaced only once completely written.
+     * Entries of files which were deleted or modified since their checksums were cached are dropped first, and so are
+     * the entries exceeding {@link #MAX_ENTRIES}.
+     */
+    public synchronized void save() throws IOException {
+        if (cacheFile == null) {
+            throw new IllegalStateException("Checksum cache is not backed by a file");
+        }
+        prune();
+        Properties properties = new Properties();
+        for (Map.Entry<String, CachedChecksums> entry : checksums.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", parent);
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try {
+            properties.store(stream, "Artifactory plugin checksum cache");
+        } finally {
+            Closeables.closeQuietly(stream);
+        }
+        if (!tempFile.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+                throw new IOException("Could not replace checksum cache " + cacheFile);
+            }
+        }
+    }
+
+    private void prune() {
+        List<Map.Entry<String, CachedChecksums>> valid = Lists.newArrayList();
+        for (Map.Entry<String, CachedChecksums> entry : checksums.entrySet()) {
+            File file = new File(entry.getKey());
+            if (entry.getValue().matches(file.length(), file.lastModified()) && file.isFile()) {
+                valid.add(entry);
+            } else {
+                checksums.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (valid.size() > MAX_ENTRIES) {
+            Collections.sort(valid, new Comparator<Map.Entry<String, CachedChecksums>>() {
+                public int compare(Map.Entry<String, CachedChecksums> o1, Map.Entry<String, CachedChecksums> o2) {
+                    long lastModified1 = o1.getValue().lastModified;
+                    long lastModified2 = o2.getValue().lastModified;
+                    return lastModified1 > lastModified2 ? -1 : (lastModified1 == lastModified2 ? 0 : 1);
+                }
+            });
+            for (Map.Entry<String, CachedChecksums> entry : valid.subList(MAX_ENTRIES, valid.size())) {
+                checksums.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        FileInputStream stream = new FileInputStream(cacheFile);
+        try {
+            properties.load(stream);
+        } finally {
+            Closeables.closeQuietly(stream);
+        }
+        for (String path : properties.stringPropertyNames()) {
+            CachedChecksums cached = CachedChecksums.parse(properties.getProperty(path));
+            if (cached != null) {
+                checksums.put(path, cached);
+            }
+        }
+    }
+
+    private static class CachedChecksums {
+        private final long length;
+        private final long lastModified;
+        private final Map<String, String> checksums;
+
+        private CachedChecksums(long length, long lastModified, Map<String, String> checksums) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksums = checksums;
+        }
+
+        private boolean matches(long length, long lastModified) {
+            return this.length == length && this.lastModified == lastModified;
+        }
+
+        private static CachedChecksums parse(String value) {
+            String[] split = StringUtils.split(value, ',');
+            if (split == null || split.length != 4) {
+                return null;
+            }
+            try {
+                Map<String, String> checksums = Maps.newHashMap();
+                checksums.put(ChecksumCalculator.MD5, split[2]);
+                checksums.put(ChecksumCalculator.SHA1, split[3]);
+                return new CachedChecksums(Long.parseLong(split[0]), Long.parseLong(split[1]),
+                        Collections.unmodifiableMap(checksums));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return length + "," + lastModified + "," + checksums.get(ChecksumCalculator.MD5) + "," +
+                    checksums.get(ChecksumCalculator.SHA1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Calculates several checksums of a file in a single read. The file is read through a buffer which is reused by each
+ * thread, and every chunk read is fed to all the requested digests.
+ */
+public class ChecksumCalculator {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA1";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Heap buffers for copying, since the data is written to streams
+     */
+    private static final ThreadLocal<byte[]> copyBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private ChecksumCalculator() {
+        // utility class
+        throw new IllegalAccessError();
+    }
+
+    /**
+     * @param file       The file to calculate the checksums of
+     * @param algorithms The digest algorithms to use, e.g. {@link #MD5} and {@link #SHA1}
+     * @return Map of the algorithm names, as given, to the lower case hex checksum
+     */
+    public static Map<String, String> calculateChecksums(File file, String... algorithms)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+
+        ByteBuffer buffer = buffers.get();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                for (MessageDigest digest : digests) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                buffer.clear();
+            }
+        } finally {
+            Closeables.closeQuietly(inputStream);
+        }
+
+        Map<String, String> checksums = Maps.newHashMap();
+        for (int i = 0; i < algorithms.length; i++) {
+            checksums.put(algorithms[i], toHex(digests[i].digest()));
+        }
+        return checksums;
+    }
+
+    /**
+     * Copies the file to the stream, calculating its checksums from the same read
+     *
+     * @param file       The file to copy and calculate the checksums of
+     * @param output     The stream to copy the file to, left open
+     * @param algorithms The digest algorithms to use, e.g. {@link #MD5} and {@link #SHA1}
+     * @return Map of the algorithm names, as given, to the lower case hex checksum
+     */
+    public static Map<String, String> copyAndCalculateChecksums(File file, OutputStream output, String... algorithms)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+
+        byte[] buffer = copyBuffers.get();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, read);
+                }
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            Closeables.closeQuietly(inputStream);
+        }
+
+        Map<String, String> checksums = Maps.newHashMap();
+        for (int i = 0; i < algorithms.length; i++) {
+            checksums.put(algorithms[i], toHex(digests[i].digest()));
+        }
+        return checksums;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
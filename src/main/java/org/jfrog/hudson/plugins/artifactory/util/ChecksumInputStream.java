@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import com.google.common.collect.Maps;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Calculates checksums of the bytes read through it, so content can be verified while it is being copied instead
+ * of being read again once written.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+
+    /**
+     * @param in         The stream to read
+     * @param algorithms The digest algorithms to use, e.g. {@link ChecksumCalculator#MD5} and
+     *                   {@link ChecksumCalculator#SHA1}
+     */
+    public ChecksumInputStream(InputStream in, String... algorithms) throws NoSuchAlgorithmException {
+        super(in);
+        this.algorithms = algorithms;
+        digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            for (MessageDigest digest : digests) {
+                digest.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, read);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes would be missing from the checksums
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return Map of the algorithm names, as given, to the lower case hex checksum of the bytes read so far. Should
+     *         be called once, after the whole stream is read.
+     */
+    public Map<String, String> getChecksums() {
+        Map<String, String> checksums = Maps.newHashMap();
+        for (int i = 0; i < algorithms.length; i++) {
+            checksums.put(algorithms[i], ChecksumCalculator.toHex(digests[i].digest()));
+        }
+        return checksums;
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.jfrog.hudson.plugins.artifactory.util;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
@@ -274,14 +273,7 @@ public class ExtractorUtils {
      * Get the list of build numbers that are to be kept forever.
      */
     public static List<String> getBuildNumbersNotToBeDeleted(AbstractBuild build) {
-        List<String> notToDelete = Lists.newArrayList();
-        List<? extends Run<?, ?>> builds = build.getProject().getBuilds();
-        for (Run<?, ?> run : builds) {
-            if (run.isKeepLog()) {
-                notToDelete.add(String.valueOf(run.getNumber()));
-            }
-        }
-        return notToDelete;
+        return KeptBuildsIndex.getInstance().getKeptBuildNumbers(build.getProject());
     }
 
     private static String getBuildNumbersNotToBeDeletedAsString(AbstractBuild build) {
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Include/exclude patterns compiled once into regular expressions, so that matching many keys doesn't parse the
+ * patterns again for each of them. Keys are matched with the Ant path semantics used by the extractors: '?' matches
+ * a single character, '*' matches within a path element and '**' matches any number of path elements. Matching
+ * ignores case, so the default exclude patterns catch keys like DB_PASSWORD.
+ */
+public class IncludeExcludeMatcher {
+
+    private static final String REGEX_SPECIAL_CHARS = "\\.[]{}()+-^$|";
+
+    private final Pattern include;
+    private final Pattern exclude;
+
+    public IncludeExcludeMatcher(String includePatterns, String excludePatterns) {
+        include = compile(includePatterns);
+        exclude = compile(excludePatterns);
+    }
+
+    /**
+     * @return True if the key is excluded explicitly, or if include patterns are given and the key matches none of
+     *         them
+     */
+    public boolean isExcluded(String key) {
+        if (exclude != null && exclude.matcher(key).matches()) {
+            return true;
+        }
+        return include != null && !include.matcher(key).matches();
+    }
+
+    /**
+     * Compiles comma separated patterns into a single alternation, null if there are no patterns
+     */
+    private static Pattern compile(String patterns) {
+        String[] split = StringUtils.split(patterns, ',');
+        if (split == null) {
+            return null;
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String pattern : split) {
+            pattern = pattern.trim();
+            if (pattern.length() == 0) {
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append("(?:").append(toRegex(pattern)).append(')');
+        }
+        return regex.length() > 0 ? Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE) : null;
+    }
+
+    private static String toRegex(String pattern) {
+        if (pattern.endsWith("/")) {
+            pattern += "**";
+        }
+        StringBuilder regex = new StringBuilder();
+        int length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < length && pattern.charAt(i + 1) == '*') {
+                i++;
+                if (i + 1 < length && pattern.charAt(i + 1) == '/') {
+                    // "**/" also matches no directory at all
+                    i++;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                if (REGEX_SPECIAL_CHARS.indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+}
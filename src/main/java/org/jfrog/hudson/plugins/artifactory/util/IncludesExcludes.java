@@ -10,6 +10,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 public class IncludesExcludes {
     private final String includePatterns;
     private final String excludePatterns;
+    private transient volatile IncludeExcludeMatcher matcher;
 
     @DataBoundConstructor
     public IncludesExcludes(String includePatterns, String excludePatterns) {
@@ -24,4 +25,16 @@ public class IncludesExcludes {
     public String getExcludePatterns() {
         return excludePatterns;
     }
+
+    /**
+     * @return The patterns compiled for matching, created once per instance
+     */
+    public IncludeExcludeMatcher getMatcher() {
+        IncludeExcludeMatcher result = matcher;
+        if (result == null) {
+            result = new IncludeExcludeMatcher(includePatterns, excludePatterns);
+            matcher = result;
+        }
+        return result;
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.WeakHashMap;
+
+/**
+ * Index of the build numbers of each job that are kept forever. A job's builds are scanned once, the first time its
+ * kept builds are needed, and from then on the index is maintained as builds complete, are saved or are deleted, so
+ * build records don't have to be loaded from disk again on each deployment.
+ * Builds are also kept when they are used by a build of a downstream job keeping its dependencies, which changes
+ * without the kept build being saved. The builds of the upstream jobs are scanned again after a build of such a job
+ * completes or is deleted, and after a job configuration is saved.
+ */
+public class KeptBuildsIndex {
+
+    private static final KeptBuildsIndex instance = new KeptBuildsIndex();
+
+    private final Map<Job<?, ?>, KeptBuilds> keptBuilds = new WeakHashMap<Job<?, ?>, KeptBuilds>();
+
+    public static KeptBuildsIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return The numbers of the builds of the job that are kept forever, in ascending order
+     */
+    public List<String> getKeptBuildNumbers(Job<?, ?> job) {
+        KeptBuilds kept = getKeptBuilds(job, true);
+        synchronized (kept) {
+            if (!kept.loaded) {
+                for (Run<?, ?> run : job.getBuilds()) {
+                    if (run.isKeepLog()) {
+                        kept.numbers.add(run.getNumber());
+                    }
+                }
+                kept.loaded = true;
+            }
+            List<String> numbers = Lists.newArrayListWithCapacity(kept.numbers.size());
+            for (Integer number : kept.numbers) {
+                numbers.add(String.valueOf(number));
+            }
+            return numbers;
+        }
+    }
+
+    private void update(Run<?, ?> run, boolean deleted) {
+        KeptBuilds kept = getKeptBuilds(run.getParent(), false);
+        if (kept == null) {
+            // Not indexed yet, the run will be seen when the job is scanned
+            return;
+        }
+        synchronized (kept) {
+            if (!kept.loaded) {
+                return;
+            }
+            if (!deleted && run.isKeepLog()) {
+                kept.numbers.add(run.getNumber());
+            } else {
+                kept.numbers.remove(run.getNumber());
+            }
+        }
+    }
+
+    private void downstreamChanged(AbstractBuild<?, ?> build) {
+        if (build.getProject().isKeepDependencies()) {
+            invalidateUpstream(build.getProject());
+        }
+    }
+
+    private void invalidateUpstream(AbstractProject<?, ?> project) {
+        List<AbstractProject> upstreamProjects = project.getUpstreamProjects();
+        synchronized (keptBuilds) {
+            for (AbstractProject upstream : upstreamProjects) {
+                keptBuilds.remove(upstream);
+            }
+        }
+    }
+
+    private KeptBuilds getKeptBuilds(Job<?, ?> job, boolean create) {
+        synchronized (keptBuilds) {
+            KeptBuilds kept = keptBuilds.get(job);
+            if (kept == null && create) {
+                kept = new KeptBuilds();
+                keptBuilds.put(job, kept);
+            }
+            return kept;
+        }
+    }
+
+    private static class KeptBuilds {
+        private final SortedSet<Integer> numbers = Sets.newTreeSet();
+        private boolean loaded;
+    }
+
+    /**
+     * Updates the index when builds complete or are deleted
+     */
+    @Extension
+    public static class KeptBuildsRunListener extends RunListener<Run> {
+
+        public KeptBuildsRunListener() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onFinalized(Run run) {
+            getInstance().update(run, false);
+            if (run instanceof AbstractBuild) {
+                getInstance().downstreamChanged((AbstractBuild<?, ?>) run);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run run) {
+            getInstance().update(run, true);
+            if (run instanceof AbstractBuild) {
+                getInstance().downstreamChanged((AbstractBuild<?, ?>) run);
+            }
+        }
+    }
+
+    /**
+     * Updates the index when a completed build is saved, which is when it is marked to be kept forever or not, and
+     * when a job is saved, which may change whether it keeps its dependencies
+     */
+    @Extension
+    public static class KeptBuildsSaveableListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable saveable, XmlFile file) {
+            if (saveable instanceof Run && !((Run) saveable).isBuilding()) {
+                getInstance().update((Run<?, ?>) saveable, false);
+            } else if (saveable instanceof AbstractProject) {
+                getInstance().invalidateUpstream((AbstractProject<?, ?>) saveable);
+            }
+        }
+    }
+}
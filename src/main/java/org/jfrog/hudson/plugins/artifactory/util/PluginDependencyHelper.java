@@ -1,58 +1,165 @@
 package org.jfrog.hudson.plugins.artifactory.util;
 
+import com.google.common.collect.Sets;
+import hudson.Extension;
 import hudson.FilePath;
 import hudson.model.AbstractBuild;
 import hudson.model.Computer;
 import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Slave;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.remoting.Which;
+import hudson.slaves.ComputerListener;
 import hudson.slaves.SlaveComputer;
 import org.apache.commons.lang.StringUtils;
+import org.jfrog.build.extractor.maven.BuildInfoRecorder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Provisions the plugin dependencies, like the extractor jars, on the nodes. The dependencies are sent to a node in a
+ * single compressed archive, extracted to a temporary directory which is renamed to the versioned dependencies
+ * directory only once complete. Provisioning is serialized per node, and is done as soon as a node connects.
+ *
  * @author Noam Y. Tenne
  */
 public class PluginDependencyHelper {
+    private static final Logger log = Logger.getLogger(PluginDependencyHelper.class.getName());
 
-    public static FilePath getActualDependencyDirectory(AbstractBuild build, File localDependencyFile)
+    /**
+     * The dependencies directories known to be complete, per connected node. Each set is also the provisioning lock
+     * of its node.
+     */
+    private static final Map<VirtualChannel, Set<String>> provisionedDirectories =
+            new WeakHashMap<VirtualChannel, Set<String>>();
+
+    /**
+     * @return Directory of the dependencies on the master, the plugin library directory holding the extractor jars
+     */
+    public static File getLocalDependencyDirectory() throws IOException {
+        return Which.jarFile(BuildInfoRecorder.class).getParentFile();
+    }
+
+    /**
+     * @return Directory of the dependencies on the node running the build, provisioned if needed
+     */
+    public static FilePath getActualDependencyDirectory(AbstractBuild build)
             throws IOException, InterruptedException {
 
-        File localDependencyDir = localDependencyFile.getParentFile();
+        File localDependencyDir = getLocalDependencyDirectory();
         if (!(Computer.currentComputer() instanceof SlaveComputer)) {
             return new FilePath(localDependencyDir);
         }
 
-        String pluginVersion = Hudson.getInstance().getPluginManager().getPlugin("artifactory").getVersion();
-        if (pluginVersion.contains(" ")) {
-            //Trim the plugin version in case we're working on a snapshot version (contains illegal chars)
-            pluginVersion = StringUtils.split(pluginVersion, " ")[0];
-        }
+        return provision(build.getWorkspace().getParent(), localDependencyDir);
+    }
+
+    /**
+     * Copies the dependencies to the node of the workspaces root, unless they are already there
+     *
+     * @param workspacesRoot     Directory of the node to provision the dependencies under
+     * @param localDependencyDir Directory of the dependencies on the master
+     * @return The directory of the dependencies on the node
+     */
+    public static FilePath provision(FilePath workspacesRoot, File localDependencyDir)
+            throws IOException, InterruptedException {
+        FilePath remoteDependencyDir = new FilePath(workspacesRoot, "artifactory-plugin/" + getPluginVersion());
+        Set<String> provisioned = getProvisionedDirectories(remoteDependencyDir.getChannel());
+        synchronized (provisioned) {
+            if (provisioned.contains(remoteDependencyDir.getRemote())) {
+                return remoteDependencyDir;
+            }
 
-        FilePath remoteDependencyDir = new FilePath(build.getWorkspace().getParent(),
-                "artifactory-plugin/" + pluginVersion);
+            //Check if the dependencies have already been transferred successfully
+            FilePath remoteDependencyMark = new FilePath(remoteDependencyDir, "ok");
+            if (!remoteDependencyMark.exists()) {
+                FilePath parent = remoteDependencyDir.getParent();
+                parent.mkdirs();
+                FilePath tempDir = parent.createTempDir(remoteDependencyDir.getName(), ".tmp");
+                boolean moved = false;
+                try {
+                    new FilePath(localDependencyDir).copyRecursiveTo("*", tempDir);
+                    new FilePath(tempDir, "ok").touch(System.currentTimeMillis());
 
-        if (!remoteDependencyDir.exists()) {
-            remoteDependencyDir.mkdirs();
+                    // A directory without the mark is left over from an interrupted copy
+                    remoteDependencyDir.deleteRecursive();
+                    tempDir.renameTo(remoteDependencyDir);
+                    if (!remoteDependencyMark.exists()) {
+                        throw new IOException("Could not move " + tempDir.getRemote() + " to " +
+                                remoteDependencyDir.getRemote());
+                    }
+                    moved = true;
+                } finally {
+                    if (!moved) {
+                        tempDir.deleteRecursive();
+                    }
+                }
+            }
+            provisioned.add(remoteDependencyDir.getRemote());
         }
 
-        //Check if the dependencies have already been transferred successfully
-        FilePath remoteDependencyMark = new FilePath(remoteDependencyDir, "ok");
-        if (!remoteDependencyMark.exists()) {
+        return remoteDependencyDir;
+    }
 
-            File[] localDependencies = localDependencyDir.listFiles();
-            for (File localDependency : localDependencies) {
-                FilePath remoteDependencyFilePath = new FilePath(remoteDependencyDir, localDependency.getName());
-                if (!remoteDependencyFilePath.exists()) {
-                    FilePath localDependencyFilePath = new FilePath(localDependency);
-                    localDependencyFilePath.copyTo(remoteDependencyFilePath);
-                }
+    private static Set<String> getProvisionedDirectories(VirtualChannel channel) {
+        synchronized (provisionedDirectories) {
+            Set<String> provisioned = provisionedDirectories.get(channel);
+            if (provisioned == null) {
+                provisioned = Sets.newHashSet();
+                provisionedDirectories.put(channel, provisioned);
             }
+            return provisioned;
+        }
+    }
 
-            //Mark that all the dependencies have been transferred successfully for future references
-            remoteDependencyMark.touch(System.currentTimeMillis());
+    private static String getPluginVersion() {
+        String pluginVersion = Hudson.getInstance().getPluginManager().getPlugin("artifactory").getVersion();
+        if (pluginVersion.contains(" ")) {
+            //Trim the plugin version in case we're working on a snapshot version (contains illegal chars)
+            pluginVersion = StringUtils.split(pluginVersion, " ")[0];
         }
+        return pluginVersion;
+    }
 
-        return remoteDependencyDir;
+    /**
+     * Provisions the dependencies under the workspaces root of a node when it connects, so its first build doesn't
+     * wait for them. Builds with a custom workspace elsewhere provision them under their own workspaces root.
+     */
+    @Extension
+    public static class ProvisioningComputerListener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (!(c instanceof SlaveComputer)) {
+                return;
+            }
+            Node node = c.getNode();
+            if (!(node instanceof Slave)) {
+                return;
+            }
+            final FilePath workspacesRoot = ((Slave) node).getWorkspaceRoot();
+            if (workspacesRoot == null) {
+                return;
+            }
+            final String nodeName = node.getNodeName();
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                public void run() {
+                    try {
+                        provision(workspacesRoot, getLocalDependencyDirectory());
+                    } catch (Exception e) {
+                        log.log(Level.WARNING, "Could not provision the Artifactory plugin dependencies on " +
+                                nodeName, e);
+                    }
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jfrog.hudson.plugins.artifactory.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link IncludeExcludeMatcher}
+ */
+public class IncludeExcludeMatcherTest {
+
+    /**
+     * The exclude patterns set by default in the job configurations
+     */
+    private static final String DEFAULT_EXCLUDE_PATTERNS = "*password*,*secret*";
+
+    @Test
+    public void defaultExcludesIgnoreCase() {
+        IncludeExcludeMatcher matcher = new IncludeExcludeMatcher(null, DEFAULT_EXCLUDE_PATTERNS);
+        assertTrue(matcher.isExcluded("DB_PASSWORD"));
+        assertTrue(matcher.isExcluded("db_Password"));
+        assertTrue(matcher.isExcluded("password"));
+        assertTrue(matcher.isExcluded("AWS_SECRET_ACCESS_KEY"));
+        assertTrue(matcher.isExcluded("ClientSecret"));
+        assertFalse(matcher.isExcluded("PATH"));
+        assertFalse(matcher.isExcluded("BUILD_NUMBER"));
+    }
+
+    @Test
+    public void includesIgnoreCase() {
+        IncludeExcludeMatcher matcher = new IncludeExcludeMatcher("build_*,JAVA_HOME", DEFAULT_EXCLUDE_PATTERNS);
+        assertFalse(matcher.isExcluded("BUILD_NUMBER"));
+        assertFalse(matcher.isExcluded("java_home"));
+        assertTrue(matcher.isExcluded("PATH"));
+        assertTrue(matcher.isExcluded("BUILD_PASSWORD"));
+    }
+
+    @Test
+    public void noPatterns() {
+        IncludeExcludeMatcher matcher = new IncludeExcludeMatcher(null, " , ");
+        assertFalse(matcher.isExcluded("DB_PASSWORD"));
+        assertFalse(matcher.isExcluded("PATH"));
+    }
+
+    @Test
+    public void wildcards() {
+        IncludeExcludeMatcher matcher = new IncludeExcludeMatcher("a?c,dir/*.jar,lib/**/*.zip", null);
+        assertFalse(matcher.isExcluded("abc"));
+        assertTrue(matcher.isExcluded("abbc"));
+        assertFalse(matcher.isExcluded("dir/x.jar"));
+        assertTrue(matcher.isExcluded("dir/sub/x.jar"));
+        assertFalse(matcher.isExcluded("lib/x.zip"));
+        assertFalse(matcher.isExcluded("lib/a/b/x.zip"));
+        assertTrue(matcher.isExcluded("lib.x.zip"));
+    }
+}